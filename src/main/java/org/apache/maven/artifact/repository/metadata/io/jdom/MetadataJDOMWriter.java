@@ -15,9 +15,13 @@
  */
 package org.apache.maven.artifact.repository.metadata.io.jdom;
 
+import static org.apache.maven.io.util.WriterUtils.appendAtPreferredLocation;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceSimpleElement;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceSimpleLists;
-import static org.apache.maven.io.util.WriterUtils.insertAtPreferredLocation;
+import static org.apache.maven.io.util.WriterUtils.flushInsertions;
+import static org.apache.maven.io.util.WriterUtils.isUpToDate;
+import static org.apache.maven.io.util.WriterUtils.markUpToDate;
+import static org.apache.maven.io.util.WriterUtils.removeNext;
 import static org.apache.maven.io.util.WriterUtils.updateElement;
 
 import java.io.IOException;
@@ -30,6 +34,7 @@ import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
 import org.apache.maven.artifact.repository.metadata.Versioning;
 import org.apache.maven.io.util.AbstractJDOMWriter;
 import org.apache.maven.io.util.IndentationCounter;
+import org.apache.maven.io.util.StreamUpdate;
 import org.jdom2.Element;
 import org.jdom2.JDOMFactory;
 import org.jdom2.UncheckedJDOMFactory;
@@ -97,7 +102,7 @@ public class MetadataJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Plugin value = (Plugin) it.next();
@@ -113,17 +118,21 @@ public class MetadataJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updatePlugin( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updatePlugin( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -152,7 +161,7 @@ public class MetadataJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final SnapshotVersion value = (SnapshotVersion) it.next();
@@ -168,17 +177,21 @@ public class MetadataJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateSnapshotVersion( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateSnapshotVersion( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -196,7 +209,7 @@ public class MetadataJDOMWriter
                                    final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "groupId",
@@ -228,7 +241,7 @@ public class MetadataJDOMWriter
                                  final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount, root, "name", plugin.getName() == null ? null : plugin.getName(), null );
         findAndReplaceSimpleElement( innerCount,
                                      root,
@@ -257,7 +270,7 @@ public class MetadataJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "timestamp", snapshot.getTimestamp() == null ? null
                             : snapshot.getTimestamp(), null );
             findAndReplaceSimpleElement( innerCount, root, "buildNumber", snapshot.getBuildNumber() == 0 ? null
@@ -283,7 +296,7 @@ public class MetadataJDOMWriter
                                           final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount, root, "classifier", snapshotVersion.getClassifier() == null ? null
                         : snapshotVersion.getClassifier(), "" );
         findAndReplaceSimpleElement( innerCount, root, "extension", snapshotVersion.getExtension() == null ? null
@@ -309,7 +322,7 @@ public class MetadataJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "latest",
@@ -336,4 +349,51 @@ public class MetadataJDOMWriter
         updateMetadata( source, "metadata", indentationCounter, rootElement );
     }
 
+    /**
+     * Streams the versions and snapshot versions entry by entry, so huge metadata files are never held in memory.
+     */
+    @Override
+    protected void updateStream( final Metadata source, final StreamUpdate root )
+    {
+        root.text( "groupId", source.getGroupId(), null );
+        root.text( "artifactId", source.getArtifactId(), null );
+        root.text( "version", source.getVersion(), null );
+        final Versioning versioning = source.getVersioning();
+        final StreamUpdate element = root.child( "versioning", versioning != null );
+        if ( versioning != null )
+        {
+            element.text( "latest", versioning.getLatest(), null );
+            element.text( "release", versioning.getRelease(), null );
+            element.section( "snapshot", new StreamUpdate.Section()
+            {
+                @Override
+                public void update( final IndentationCounter counter, final Element parent )
+                {
+                    updateSnapshot( versioning.getSnapshot(), "snapshot", counter, parent );
+                }
+            } );
+            element.textList( "versions", "version", versioning.getVersions() );
+            element.text( "lastUpdated", versioning.getLastUpdated(), null );
+            element.list( "snapshotVersions", "snapshotVersion", versioning.getSnapshotVersions(),
+                          new StreamUpdate.ItemUpdater<SnapshotVersion>()
+                          {
+                              @Override
+                              public void update( final SnapshotVersion value, final String xmlTag,
+                                                  final IndentationCounter counter, final Element element )
+                              {
+                                  updateSnapshotVersion( value, xmlTag, counter, element );
+                              }
+                          } );
+        }
+        root.list( "plugins", "plugin", source.getPlugins(), new StreamUpdate.ItemUpdater<Plugin>()
+        {
+            @Override
+            public void update( final Plugin value, final String xmlTag, final IndentationCounter counter,
+                                final Element element )
+            {
+                updatePlugin( value, xmlTag, counter, element );
+            }
+        } );
+    }
+
 }
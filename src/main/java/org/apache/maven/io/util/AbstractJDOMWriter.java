@@ -15,35 +15,42 @@
  */
 package org.apache.maven.io.util;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.WriterFactory;
-import org.jdom2.Comment;
-import org.jdom2.Content;
-import org.jdom2.DocType;
+import org.codehaus.plexus.util.ReaderFactory;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 import org.jdom2.JDOMFactory;
-import org.jdom2.ProcessingInstruction;
-import org.jdom2.Text;
 import org.jdom2.UncheckedJDOMFactory;
-import org.jdom2.Verifier;
 import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.EscapeStrategy;
 import org.jdom2.output.Format;
 import org.jdom2.output.Format.TextMode;
 import org.jdom2.output.LineSeparator;
 import org.jdom2.output.XMLOutputter;
-import org.jdom2.output.support.AbstractXMLOutputProcessor;
-import org.jdom2.output.support.FormatStack;
-import org.jdom2.output.support.Walker;
-import org.jdom2.util.NamespaceStack;
 
 @SuppressWarnings( "unchecked" )
 public abstract class AbstractJDOMWriter<T, TYPE extends AbstractJDOMWriter<T, TYPE>>
@@ -52,6 +59,34 @@ public abstract class AbstractJDOMWriter<T, TYPE extends AbstractJDOMWriter<T, T
 
     protected final JDOMFactory factory = new UncheckedJDOMFactory();
 
+    private String indentUnit;
+
+    private boolean skipUnchanged;
+
+    private boolean spliceOutput;
+
+    private boolean lazyParsing;
+
+    private boolean atomicWrites;
+
+    private boolean syncWrites;
+
+    private boolean fingerprints;
+
+    private boolean encodingSet;
+
+    private long memoryMapThreshold;
+
+    private volatile Executor computeExecutor;
+
+    private volatile Executor ioExecutor;
+
+    private volatile SAXBuilderPool parserPool = SAXBuilderPool.getDefault();
+
+    private volatile Indentation indentation = Indentation.DEFAULT;
+
+    private final Fingerprints recordedFingerprints = new Fingerprints();
+
     protected AbstractJDOMWriter()
     {
         setTextMode( TextMode.PRESERVE );
@@ -86,111 +121,211 @@ public abstract class AbstractJDOMWriter<T, TYPE extends AbstractJDOMWriter<T, T
         write( source, document, writer, jdomFormat, null );
     }
 
+    /**
+     * Updates <code>document</code> from <code>source</code> and writes it out. With
+     * {@link #setFingerprints(boolean)}, when the same document is written again by this writer, list entries whose
+     * model object and element both kept their fingerprint since the last write are not updated again.
+     */
     public final void write( final T source, final Document document, final Writer writer, final Format jdomFormat,
                              final DocumentModifier modifier )
         throws java.io.IOException
+    {
+        updateDocument( null, source, document, null, modifier, true, false );
+        output( document, writer, jdomFormat );
+    }
+
+    public final ChangeSet writeTracked( final T source, final Document document, final Writer writer )
+        throws java.io.IOException
+    {
+        return writeTracked( source, document, writer, format, null );
+    }
+
+    public final ChangeSet writeTracked( final T source, final Document document, final Writer writer,
+                                         final DocumentModifier modifier )
+        throws java.io.IOException
+    {
+        return writeTracked( source, document, writer, format, modifier );
+    }
+
+    public final ChangeSet writeTracked( final T source, final Document document, final Writer writer,
+                                         final Format jdomFormat )
+        throws java.io.IOException
+    {
+        return writeTracked( source, document, writer, jdomFormat, null );
+    }
+
+    /**
+     * Like {@link #write(Object, Document, Writer, Format, DocumentModifier)}, but also records what the update does
+     * to the document.
+     * 
+     * @return the changes the update made to the document, not including those of <code>modifier</code>
+     */
+    public final ChangeSet writeTracked( final T source, final Document document, final Writer writer,
+                                         final Format jdomFormat, final DocumentModifier modifier )
+        throws java.io.IOException
+    {
+        final UpdateContext context = updateDocument( null, source, document, null, modifier, true, true );
+        output( document, writer, jdomFormat );
+        return context.getChangeSet();
+    }
+
+    /**
+     * Updates <code>document</code>, which holds <code>previous</code>, from <code>source</code> and writes it out.
+     * Parts of the model that are the same in both are left alone where the writer supports that; see
+     * {@link #update(Object, Object, IndentationCounter, Element)}.
+     */
+    public final void write( final T previous, final T source, final Document document, final Writer writer )
+        throws java.io.IOException
+    {
+        updateDocument( previous, source, document, null, null, true, false );
+        output( document, writer, format );
+    }
+
+    /**
+     * Like {@link #write(Object, Object, Document, Writer)}, but also records what the update does to the document.
+     * 
+     * @return the changes the update made to the document
+     */
+    public final ChangeSet writeTracked( final T previous, final T source, final Document document,
+                                         final Writer writer )
+        throws java.io.IOException
+    {
+        final UpdateContext context = updateDocument( previous, source, document, null, null, true, true );
+        output( document, writer, format );
+        return context.getChangeSet();
+    }
+
+    /**
+     * Updates <code>document</code> from <code>source</code> like {@link #write(Object, Document, Writer)} and writes
+     * it to <code>stream</code> in the writer's encoding, which is left open.
+     */
+    public final void write( final T source, final Document document, final OutputStream stream )
+        throws IOException
+    {
+        updateDocument( null, source, document, null, null, true, false );
+        output( document, EncodingWriter.to( stream, getEncoding() ) );
+    }
+
+    /**
+     * Like {@link #write(Object, Document, OutputStream)}, but also records what the update does to the document.
+     * 
+     * @return the changes the update made to the document
+     */
+    public final ChangeSet writeTracked( final T source, final Document document, final OutputStream stream )
+        throws IOException
+    {
+        final UpdateContext context = updateDocument( null, source, document, null, null, true, true );
+        output( document, EncodingWriter.to( stream, getEncoding() ) );
+        return context.getChangeSet();
+    }
+
+    /**
+     * Updates <code>document</code> from <code>source</code> like {@link #write(Object, Document, Writer)} and writes
+     * it to <code>channel</code> in the writer's encoding, which is left open.
+     */
+    public final void write( final T source, final Document document, final WritableByteChannel channel )
+        throws IOException
+    {
+        updateDocument( null, source, document, null, null, true, false );
+        output( document, EncodingWriter.to( channel, getEncoding() ) );
+    }
+
+    /**
+     * Like {@link #write(Object, Document, WritableByteChannel)}, but also records what the update does to the
+     * document.
+     * 
+     * @return the changes the update made to the document
+     */
+    public final ChangeSet writeTracked( final T source, final Document document, final WritableByteChannel channel )
+        throws IOException
+    {
+        final UpdateContext context = updateDocument( null, source, document, null, null, true, true );
+        output( document, EncodingWriter.to( channel, getEncoding() ) );
+        return context.getChangeSet();
+    }
+
+    /**
+     * Updates <code>document</code> from <code>source</code> like {@link #write(Object, Document, Writer)} and writes
+     * it to <code>buffer</code> in the writer's encoding, from its position on.
+     *
+     * @throws java.nio.BufferOverflowException if the document does not fit into the remaining space of
+     *             <code>buffer</code>
+     */
+    public final void write( final T source, final Document document, final ByteBuffer buffer )
+        throws IOException
+    {
+        updateDocument( null, source, document, null, null, true, false );
+        output( document, EncodingWriter.to( buffer, getEncoding() ) );
+    }
+
+    /**
+     * Like {@link #write(Object, Document, ByteBuffer)}, but also records what the update does to the document.
+     * 
+     * @return the changes the update made to the document
+     * @throws java.nio.BufferOverflowException if the document does not fit into the remaining space of
+     *             <code>buffer</code>
+     */
+    public final ChangeSet writeTracked( final T source, final Document document, final ByteBuffer buffer )
+        throws IOException
+    {
+        final UpdateContext context = updateDocument( null, source, document, null, null, true, true );
+        output( document, EncodingWriter.to( buffer, getEncoding() ) );
+        return context.getChangeSet();
+    }
+
+    private void output( final Document document, final EncodingWriter writer )
+        throws IOException
+    {
+        try
+        {
+            output( document, writer, format );
+            writer.close();
+        }
+        finally
+        {
+            writer.release();
+        }
+    }
+
+    /**
+     * @param retained whether the document is kept after the write, so that fingerprints recorded for its elements
+     *            may be used by later writes
+     * @param track whether to record the changes for {@link UpdateContext#getChangeSet()}
+     */
+    private UpdateContext updateDocument( final T previous, final T source, final Document document,
+                                          final LazyDocument lazy, final DocumentModifier modifier,
+                                          final boolean retained, final boolean track )
+        throws IOException
     {
         if ( modifier != null )
         {
             modifier.preProcess( document );
         }
-        update( source, new IndentationCounter( 0 ), document.getRootElement() );
+        final UpdateContext context = new UpdateContext( getIndentation( document ), track );
+        if ( retained && fingerprints )
+        {
+            context.setFingerprints( recordedFingerprints );
+        }
+        context.setLazyDocument( lazy );
+        if ( previous == null )
+        {
+            update( source, context.enterLevel( 0 ), document.getRootElement() );
+        }
+        else
+        {
+            update( previous, source, context.enterLevel( 0 ), document.getRootElement() );
+        }
         if ( modifier != null )
         {
             modifier.postProcess( document );
         }
-        // Override XMLOutputter to correct initial comment trailing newlines.
-        final XMLOutputter outputter = new XMLOutputter(new AbstractXMLOutputProcessor()
-        {
-            /**
-             * This will handle printing of a {@link Document}.
-             *
-             * @param out    <code>Writer</code> to use.
-             * @param fstack the FormatStack
-             * @param nstack the NamespaceStack
-             * @param doc    <code>Document</code> to write.
-             * @throws IOException if the destination Writer fails
-             */
-            @Override protected void printDocument(Writer out, FormatStack fstack, NamespaceStack nstack, Document doc)
-                    throws IOException
-            {
-
-                // If there is no root element then we cannot use the normal ways to
-                // access the ContentList because Document throws an exception.
-                // so we hack it and just access it by index.
-                List<Content> list = doc.hasRootElement() ? doc.getContent() :
-                        new ArrayList<Content>(doc.getContentSize());
-                if (list.isEmpty()) {
-                    final int sz = doc.getContentSize();
-                    for (int i = 0; i < sz; i++) {
-                        list.add(doc.getContent(i));
-                    }
-                }
-
-                printDeclaration(out, fstack);
-
-                Walker walker = buildWalker(fstack, list, true);
-                if (walker.hasNext()) {
-                    while (walker.hasNext()) {
-
-                        final Content c = walker.next();
-                        // we do not ignore Text-like things in the Document.
-                        // the walker creates the indenting for us.
-                        if (c == null) {
-                            // but, what we do is ensure it is all whitespace, and not CDATA
-                            final String padding = walker.text();
-                            if (padding != null && Verifier.isAllXMLWhitespace(padding) &&
-                                    !walker.isCDATA()) {
-                                // we do not use the escaping or text* method because this
-                                // content is outside of the root element, and thus is not
-                                // strict text.
-                                write(out, padding);
-                            }
-                        } else {
-                            switch (c.getCType()) {
-                                case Comment :
-                                    printComment(out, fstack, (Comment)c);
-                                    // This modification we have made to the overridden method in order
-                                    // to correct newline declarations.
-                                    write(out, fstack.getLineSeparator());
-                                    break;
-                                case DocType :
-                                    printDocType(out, fstack, (DocType)c);
-                                    break;
-                                case Element :
-                                    printElement(out, fstack, nstack, (Element)c);
-                                    if (walker.hasNext())
-                                    {
-                                        // This modification we have made to the overridden method in order
-                                        // to correct newline declarations.
-                                        write(out, fstack.getLineSeparator());
-                                    }
-                                    break;
-                                case ProcessingInstruction :
-                                    printProcessingInstruction(out, fstack,
-                                            (ProcessingInstruction)c);
-                                    break;
-                                case Text :
-                                    final String padding = ((Text)c).getText();
-                                    if (padding != null && Verifier.isAllXMLWhitespace(padding)) {
-                                        // we do not use the escaping or text* method because this
-                                        // content is outside of the root element, and thus is not
-                                        // strict text.
-                                        write(out, padding);
-                                    }
-                                default :
-                                    // do nothing.
-                            }
-                        }
-
-                    }
+        return context;
+    }
 
-                    if (fstack.getLineSeparator() != null) {
-                        write(out, fstack.getLineSeparator());
-                    }
-                }
-            }
-        });
+    private void output( final Document document, final Writer writer, final Format jdomFormat )
+        throws IOException
+    {
+        final XMLOutputter outputter = new XMLOutputter( new DocumentOutputProcessor() );
 
         outputter.setFormat( jdomFormat );
         outputter.output( document, writer );
@@ -214,29 +349,633 @@ public abstract class AbstractJDOMWriter<T, TYPE extends AbstractJDOMWriter<T, T
         write( source, target, format, null );
     }
 
+    /**
+     * Updates the document in <code>target</code> from <code>source</code> and writes it back. The file is read once;
+     * the document is parsed from the bytes read, which are kept for {@link #setSkipUnchanged(boolean)} and
+     * {@link #setSpliceOutput(boolean)}. The output is encoded as <code>format</code> says; when that is the writer's
+     * own format and no encoding was set, the file keeps the encoding it declares.
+     */
     public final void write( final T source, final File target, final Format format, final DocumentModifier modifier )
         throws IOException, JDOMException
     {
-        final SAXBuilder builder = new SAXBuilder();
-        final Document doc = builder.build( target );
+        write( null, source, target, format, modifier, false );
+    }
+
+    public final ChangeSet writeTracked( final T source, final File target )
+        throws IOException, JDOMException
+    {
+        return writeTracked( source, target, format, null );
+    }
+
+    public final ChangeSet writeTracked( final T source, final File target, final DocumentModifier modifier )
+        throws IOException, JDOMException
+    {
+        return writeTracked( source, target, format, modifier );
+    }
+
+    public final ChangeSet writeTracked( final T source, final File target, final Format format )
+        throws IOException, JDOMException
+    {
+        return writeTracked( source, target, format, null );
+    }
 
-        Writer pomWriter = null;
+    /**
+     * Like {@link #write(Object, File, Format, DocumentModifier)}, but also records what the update does to the
+     * document.
+     * 
+     * @return the changes the update made to the document, not including those of <code>modifier</code>
+     */
+    public final ChangeSet writeTracked( final T source, final File target, final Format format,
+                                         final DocumentModifier modifier )
+        throws IOException, JDOMException
+    {
+        return write( null, source, target, format, modifier, true );
+    }
+
+    /**
+     * Updates the file <code>target</code>, which holds <code>previous</code>, from <code>source</code>. Parts of the
+     * model that are the same in both are left alone where the writer supports that; see
+     * {@link #update(Object, Object, IndentationCounter, Element)}.
+     */
+    public final void write( final T previous, final T source, final File target )
+        throws IOException, JDOMException
+    {
+        write( previous, source, target, format, null, false );
+    }
+
+    /**
+     * Like {@link #write(Object, Object, File)}, but also records what the update does to the document.
+     * 
+     * @return the changes the update made to the document
+     */
+    public final ChangeSet writeTracked( final T previous, final T source, final File target )
+        throws IOException, JDOMException
+    {
+        return write( previous, source, target, format, null, true );
+    }
+
+    /**
+     * @return the changes, or {@link ChangeSet#EMPTY} if they are not tracked
+     */
+    private ChangeSet write( final T previous, final T source, final File target, final Format format,
+                             final DocumentModifier modifier, final boolean track )
+        throws IOException, JDOMException
+    {
+        final SAXBuilderPool pool = parserPool;
+        final SAXBuilder builder = pool.acquire();
         try
         {
-            pomWriter = WriterFactory.newWriter( target, getEncoding() );
-            write( source, doc, pomWriter, format, modifier );
-            pomWriter.flush();
+            if ( !skipUnchanged && !spliceOutput && !lazyParsing && memoryMapThreshold > 0
+                && target.length() >= memoryMapThreshold )
+            {
+                // nothing needs the original bytes but the parser.
+                return writeMapped( builder, previous, source, target, format, modifier, track );
+            }
+
+            final byte[] original = readBytes( target );
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream( original.length + 256 );
+            final UpdateContext context =
+                rewrite( builder, previous, source, target, original, format, modifier, track, buffer );
+            if ( buffer.size() > 0 )
+            {
+                writeBytes( target, buffer.toByteArray() );
+            }
+            return context.getChangeSet();
         }
         finally
         {
-            IOUtil.close( pomWriter );
+            pool.release( builder );
+        }
+    }
+
+    /**
+     * Parses <code>original</code>, the content of <code>target</code>, updates it and renders it to
+     * <code>buffer</code>, which is left empty when the file is to be left as it is.
+     */
+    private UpdateContext rewrite( final SAXBuilder builder, final T previous, final T source, final File target,
+                                   final byte[] original, final Format format, final DocumentModifier modifier,
+                                   final boolean track, final ByteArrayOutputStream buffer )
+        throws IOException, JDOMException
+    {
+        final String systemId = target.toURI().toString();
+        final String encoding = formatFor( original, format ).getEncoding();
+        final LazyDocument lazy =
+            lazyParsing && modifier == null ? LazyDocument.parse( original, systemId, builder, encoding ) : null;
+        final Document doc =
+            lazy != null ? lazy.getDocument() : builder.build( new ByteArrayInputStream( original ), systemId );
+        try
+        {
+            return render( previous, source, doc, lazy, original, format, modifier, false, track, buffer );
+        }
+        catch ( final LazyDocument.ExpansionException e )
+        {
+            throw e.getJDOMException();
         }
+    }
 
+    public final Future<ChangeSet> writeAsync( final T source, final File target )
+    {
+        return writeAsync( null, source, target, null );
+    }
+
+    public final Future<ChangeSet> writeAsync( final T source, final File target, final DocumentModifier modifier )
+    {
+        return writeAsync( null, source, target, modifier );
+    }
+
+    /**
+     * Asynchronous variant of {@link #writeTracked(Object, Object, File)}; see {@link #writeAsync(Object, Object, File,
+     * DocumentModifier)}.
+     */
+    public final Future<ChangeSet> writeAsync( final T previous, final T source, final File target )
+    {
+        return writeAsync( previous, source, target, null );
+    }
+
+    /**
+     * Starts writing <code>source</code> to <code>target</code> like
+     * {@link #writeTracked(Object, File, DocumentModifier)} or, with <code>previous</code>,
+     * {@link #writeTracked(Object, Object, File)}, and returns at once. The file is read and
+     * written on the I/O executor, and parsed, updated and serialized on the compute executor in between; see
+     * {@link #setExecutors(Executor, Executor)}. Cancelling the result skips the steps that have not started yet, so
+     * the file is either written in full or not at all.
+     * <p>
+     * Writes to different files may run at the same time. Writes to the same file are not ordered against each other,
+     * so wait for one to finish before starting the next. The models must not change until the write is done.
+     */
+    public final Future<ChangeSet> writeAsync( final T previous, final T source, final File target,
+                                               final DocumentModifier modifier )
+    {
+        final AsyncWrite write = new AsyncWrite( previous, source, target, modifier );
+        write.io.execute( write );
+        return write.result;
+    }
+
+    /**
+     * The steps of {@link AbstractJDOMWriter#writeAsync(Object, Object, File, DocumentModifier)}, each run on its
+     * executor by the one before.
+     */
+    private final class AsyncWrite
+        implements Runnable
+    {
+
+        private final T previous;
+
+        private final T source;
+
+        private final File target;
+
+        private final DocumentModifier modifier;
+
+        private final Format format = AbstractJDOMWriter.this.format;
+
+        private final Executor compute = computeExecutor != null ? computeExecutor : WriteFuture.computeExecutor();
+
+        private final Executor io = ioExecutor != null ? ioExecutor : WriteFuture.ioExecutor();
+
+        private final SAXBuilderPool pool = parserPool;
+
+        private final WriteFuture result = new WriteFuture();
+
+        private byte[] original;
+
+        private ByteArrayOutputStream buffer;
+
+        private ChangeSet changes;
+
+        AsyncWrite( final T previous, final T source, final File target, final DocumentModifier modifier )
+        {
+            this.previous = previous;
+            this.source = source;
+            this.target = target;
+            this.modifier = modifier;
+        }
+
+        public void run()
+        {
+            if ( result.isDone() )
+            {
+                return;
+            }
+            try
+            {
+                if ( original == null )
+                {
+                    original = readBytes( target );
+                    compute.execute( this );
+                }
+                else if ( changes == null )
+                {
+                    buffer = new ByteArrayOutputStream( original.length + 256 );
+                    final SAXBuilder builder = pool.acquire();
+                    try
+                    {
+                        final UpdateContext context =
+                            rewrite( builder, previous, source, target, original, format, modifier, true, buffer );
+                        changes = context.getChangeSet();
+                    }
+                    finally
+                    {
+                        pool.release( builder );
+                    }
+                    if ( buffer.size() > 0 )
+                    {
+                        io.execute( this );
+                    }
+                    else
+                    {
+                        result.complete( changes );
+                    }
+                }
+                else
+                {
+                    writeBytes( target, buffer.toByteArray() );
+                    result.complete( changes );
+                }
+            }
+            catch ( final Throwable e )
+            {
+                result.fail( e );
+            }
+        }
+
+    }
+
+    private ChangeSet writeMapped( final SAXBuilder builder, final T previous, final T source, final File target,
+                                   final Format format, final DocumentModifier modifier, final boolean track )
+        throws IOException, JDOMException
+    {
+        final ByteBuffer mapped = FileInput.map( target );
+        final Format fileFormat = formatFor( FileInput.head( mapped ), format );
+        final Document doc = builder.build( FileInput.newInputStream( mapped ), target.toURI().toString() );
+        final UpdateContext context = updateDocument( previous, source, doc, null, modifier, false, track );
+
+        final TargetFile out = new TargetFile( target, atomicWrites, syncWrites );
+        EncodingWriter writer = null;
+        try
+        {
+            writer = EncodingWriter.to( out.open(), fileFormat.getEncoding() );
+            output( doc, writer, fileFormat );
+            writer.close();
+            out.commit();
+            return context.getChangeSet();
+        }
+        finally
+        {
+            if ( writer != null )
+            {
+                writer.release();
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Opens a session for writing models to <code>target</code> repeatedly without parsing it each time; see
+     * {@link EditSession}.
+     */
+    public final EditSession<T> openSession( final File target )
+    {
+        return new EditSession<T>( this, target );
+    }
+
+    /**
+     * Updates <code>doc</code>, which holds the document read from <code>original</code>, and renders it to
+     * <code>buffer</code> as {@link #write(Object, File, Format, DocumentModifier)} does. <code>previous</code> is
+     * the model the document holds, or null if it is not known. <code>lazy</code> is the lazily parsed document, if
+     * <code>doc</code> is one.
+     *
+     * @return the context of the update; <code>buffer</code> is left empty when the file is to be left as it is
+     */
+    final UpdateContext render( final T previous, final T source, final Document doc, final LazyDocument lazy,
+                                final byte[] original, final Format format, final DocumentModifier modifier,
+                                final boolean retained, final boolean track, final ByteArrayOutputStream buffer )
+        throws IOException
+    {
+        final Format fileFormat = formatFor( original, format );
+
+        // a modifier may change anything, so splicing is limited to changes the update pass knows about.
+        final SpliceOutput splice;
+        if ( lazy != null )
+        {
+            splice = lazy.createSpliceOutput();
+        }
+        else
+        {
+            splice =
+                spliceOutput && modifier == null ? SpliceOutput.prepare( original, doc, fileFormat.getEncoding() )
+                                : null;
+        }
+        final UpdateContext context = updateDocument( previous, source, doc, lazy, modifier, retained, track );
+        if ( skipUnchanged && modifier == null && !context.isModified() )
+        {
+            return context;
+        }
+
+        final EncodingWriter bufferWriter = EncodingWriter.to( buffer, fileFormat.getEncoding() );
+        try
+        {
+            if ( splice != null && ( lazy == null || lazy.isSpliceable() ) && splice.render( context, fileFormat ) )
+            {
+                splice.writeTo( bufferWriter );
+            }
+            else
+            {
+                if ( lazy != null )
+                {
+                    lazy.expandAll();
+                }
+                output( doc, bufferWriter, fileFormat );
+            }
+            bufferWriter.close();
+        }
+        finally
+        {
+            bufferWriter.release();
+        }
+
+        if ( skipUnchanged && Arrays.equals( original, buffer.toByteArray() ) )
+        {
+            buffer.reset();
+        }
+        return context;
+    }
+
+    public final TextPatch diff( final T source, final File target )
+        throws IOException, JDOMException
+    {
+        return diff( source, target, format );
+    }
+
+    /**
+     * Updates the document in <code>target</code> from <code>source</code> like
+     * {@link #write(Object, File, Format, DocumentModifier)} would, but leaves the file alone and returns the edits the
+     * update makes to its text. The edits come from splicing the changed elements into the original text, as with
+     * {@link #setSpliceOutput(boolean)}; when the document cannot be spliced, they cover the span between the common
+     * start and end of the original and the fully serialized document.
+     */
+    public final TextPatch diff( final T source, final File target, final Format format )
+        throws IOException, JDOMException
+    {
+        final byte[] original = readBytes( target );
+        final Document doc = parse( original, target );
+        final Format fileFormat = formatFor( original, format );
+        final SpliceOutput splice = SpliceOutput.prepare( original, doc, fileFormat.getEncoding() );
+        final UpdateContext context = updateDocument( null, source, doc, null, null, false, true );
+        if ( splice != null && splice.render( context, fileFormat ) )
+        {
+            return TextPatch.create( splice.getSourceText(), splice.getSegments(), context.getChangeSet() );
+        }
+
+        final StringWriter updated = new StringWriter( original.length + 256 );
+        output( doc, updated, fileFormat );
+        final String text = IOUtil.toString( ReaderFactory.newXmlReader( new ByteArrayInputStream( original ) ) );
+        return TextPatch.replace( text, updated.toString(), context.getChangeSet() );
+    }
+
+    /**
+     * Parses <code>original</code>, the content of <code>file</code>, with a builder of the writer's pool.
+     */
+    final Document parse( final byte[] original, final File file )
+        throws IOException, JDOMException
+    {
+        final SAXBuilderPool pool = parserPool;
+        final SAXBuilder builder = pool.acquire();
+        try
+        {
+            return builder.build( new ByteArrayInputStream( original ), file.toURI().toString() );
+        }
+        finally
+        {
+            pool.release( builder );
+        }
+    }
+
+    /**
+     * Updates the document read from <code>reader</code> from <code>source</code> while copying it to
+     * <code>writer</code>, without building it in memory; see {@link StreamUpdate} for how the update differs from the
+     * one of {@link #write(Object, Document, Writer)}.
+     *
+     * @throws UnsupportedOperationException if the writer does not support streaming updates
+     */
+    public final ChangeSet writeStreaming( final T source, final Reader reader, final Writer writer )
+        throws IOException, JDOMException
+    {
+        final StreamUpdate rules = new StreamUpdate();
+        updateStream( source, rules );
+
+        XMLStreamReader in = null;
+        try
+        {
+            in = StreamingUpdater.newInputFactory().createXMLStreamReader( reader );
+            return stream( in, writer, rules, format );
+        }
+        catch ( final XMLStreamException e )
+        {
+            throw new JDOMException( e.getMessage(), e );
+        }
+        finally
+        {
+            closeQuietly( in );
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #write(Object, File)}: the updated document is written to a temporary file next to
+     * <code>target</code>, which then replaces it as with {@link #setAtomicWrites(boolean)}. With
+     * {@link #setSkipUnchanged(boolean)}, <code>target</code> is left alone if the update changes nothing. The file
+     * keeps its line separator and, as with {@link #write(Object, File)}, the encoding it declares.
+     *
+     * @throws UnsupportedOperationException if the writer does not support streaming updates
+     */
+    public final ChangeSet writeStreaming( final T source, final File target )
+        throws IOException, JDOMException
+    {
+        final StreamUpdate rules = new StreamUpdate();
+        updateStream( source, rules );
+
+        final TargetFile out = new TargetFile( target, true, syncWrites );
+        InputStream input = null;
+        XMLStreamReader in = null;
+        EncodingWriter writer = null;
+        try
+        {
+            input = new BufferedInputStream( new FileInputStream( target ) );
+            final byte[] head = FileInput.head( input );
+            Format fileFormat = formatFor( head, format );
+            final String lineSeparator = SourceMap.detectLineSeparator( head );
+            if ( lineSeparator != null )
+            {
+                fileFormat = fileFormat.clone().setLineSeparator( lineSeparator );
+            }
+
+            in = StreamingUpdater.newInputFactory().createXMLStreamReader( target.toURI().toString(), input );
+            writer = EncodingWriter.to( out.open(), fileFormat.getEncoding() );
+            final ChangeSet changes = stream( in, writer, rules, fileFormat );
+            writer.close();
+            closeQuietly( in );
+            in = null;
+            input.close();
+            input = null;
+
+            if ( !skipUnchanged || !changes.isEmpty() )
+            {
+                out.commit();
+            }
+            return changes;
+        }
+        catch ( final XMLStreamException e )
+        {
+            throw new JDOMException( e.getMessage(), e );
+        }
+        finally
+        {
+            if ( writer != null )
+            {
+                writer.release();
+            }
+            out.close();
+            closeQuietly( in );
+            IOUtil.close( input );
+        }
+    }
+
+    private ChangeSet stream( final XMLStreamReader in, final Writer writer, final StreamUpdate rules,
+                              final Format format )
+        throws XMLStreamException
+    {
+        final XMLStreamWriter out = StreamingUpdater.newOutput( writer, format.getLineSeparator() );
+        try
+        {
+            return new StreamingUpdater( in, out, format, indentUnit ).update( rules );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void closeQuietly( final XMLStreamReader in )
+    {
+        if ( in != null )
+        {
+            try
+            {
+                in.close();
+            }
+            catch ( final XMLStreamException e )
+            {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Reads <code>file</code> as set up by {@link #setMemoryMapThreshold(long)}.
+     */
+    final byte[] readBytes( final File file )
+        throws IOException
+    {
+        return FileInput.read( file, memoryMapThreshold );
+    }
+
+    /**
+     * The format to write a file read from <code>original</code> with: <code>format</code>, unless it is the writer's
+     * own and no encoding was set, in which case the encoding is the one the file declares, if supported.
+     */
+    private Format formatFor( final byte[] original, final Format format )
+    {
+        if ( format != this.format || encodingSet )
+        {
+            return format;
+        }
+        final String declared = SourceMap.detectEncoding( original );
+        if ( declared == null || declared.equalsIgnoreCase( format.getEncoding() ) )
+        {
+            return format;
+        }
+        try
+        {
+            if ( !Charset.isSupported( declared ) )
+            {
+                return format;
+            }
+        }
+        catch ( final IllegalCharsetNameException e )
+        {
+            return format;
+        }
+        return format.clone().setEncoding( declared );
+    }
+
+    /**
+     * Writes <code>bytes</code> to <code>file</code> as set up by {@link #setAtomicWrites(boolean)} and
+     * {@link #setSyncWrites(boolean)}.
+     */
+    final void writeBytes( final File file, final byte[] bytes )
+        throws IOException
+    {
+        final TargetFile out = new TargetFile( file, atomicWrites, syncWrites );
+        try
+        {
+            out.open().write( bytes );
+            out.commit();
+        }
+        finally
+        {
+            out.close();
+        }
     }
 
     protected abstract void update( T source, IndentationCounter indentationCounter, Element rootElement )
         throws IOException;
 
+    /**
+     * Updates the document from <code>source</code>, knowing that it holds <code>previous</code>. Writers that can
+     * compare the two override this to leave the parts that did not change alone; by default the whole document is
+     * updated.
+     */
+    protected void update( final T previous, final T source, final IndentationCounter indentationCounter,
+                           final Element rootElement )
+        throws IOException
+    {
+        update( source, indentationCounter, rootElement );
+    }
+
+    /**
+     * Describes the update of {@link #update(Object, IndentationCounter, Element)} for the streaming writes, by adding
+     * rules for the children of the root element to <code>root</code>. Writers that support streaming override this.
+     */
+    protected void updateStream( final T source, final StreamUpdate root )
+    {
+        throw new UnsupportedOperationException( getClass().getSimpleName() + " does not support streaming updates" );
+    }
+
+    /**
+     * The configured indent unit, or else the one the document already uses, as a table shared between writes that use
+     * the same unit.
+     */
+    private Indentation getIndentation( final Document document )
+    {
+        String unit = indentUnit;
+        if ( unit == null && document.hasRootElement() )
+        {
+            unit = Indentation.detectUnit( document.getRootElement() );
+        }
+        if ( unit == null )
+        {
+            unit = Indentation.DEFAULT_UNIT;
+        }
+
+        Indentation result = indentation;
+        if ( !result.getUnit().equals( unit ) )
+        {
+            result = new Indentation( unit );
+            indentation = result;
+        }
+        return result;
+    }
+
     public TYPE setEscapeStrategy( final EscapeStrategy strategy )
     {
         format.setEscapeStrategy( strategy );
@@ -331,9 +1070,182 @@ public abstract class AbstractJDOMWriter<T, TYPE extends AbstractJDOMWriter<T, T
         return format.getIndent();
     }
 
+    /**
+     * Sets the whitespace used per nesting level in front of elements the writer inserts, eg. "    " or "\t". This is
+     * independent of {@link #setIndent(String)}, which only applies to the outputter's pretty formats. When not set,
+     * the unit is detected from the document being updated, falling back to two spaces.
+     */
+    public TYPE setIndentUnit( final String indentUnit )
+    {
+        this.indentUnit = indentUnit;
+        return (TYPE) this;
+    }
+
+    public String getIndentUnit()
+    {
+        return indentUnit;
+    }
+
+    /**
+     * When set, {@link #write(Object, File, Format, DocumentModifier)} leaves the target file untouched - contents and
+     * modification time - if updating it from the model changes nothing. Without a {@link DocumentModifier} that is
+     * known from the update itself and nothing is serialized; with one, the output is rendered in memory and compared
+     * to the original bytes.
+     */
+    public TYPE setSkipUnchanged( final boolean skipUnchanged )
+    {
+        this.skipUnchanged = skipUnchanged;
+        return (TYPE) this;
+    }
+
+    public boolean isSkipUnchanged()
+    {
+        return skipUnchanged;
+    }
+
+    /**
+     * When set, {@link #write(Object, File, Format, DocumentModifier)} copies the original file and serializes only the
+     * content of elements the update changed, splicing it in place. Everything else keeps its exact original
+     * formatting, and new content uses the file's line separator. The full document is written as usual when a
+     * {@link DocumentModifier} is given, when the file is not in the writer's encoding, or when its structure cannot be
+     * matched to the parsed document (eg. because of entity declarations).
+     */
+    public TYPE setSpliceOutput( final boolean spliceOutput )
+    {
+        this.spliceOutput = spliceOutput;
+        return (TYPE) this;
+    }
+
+    public boolean isSpliceOutput()
+    {
+        return spliceOutput;
+    }
+
+    /**
+     * When set, the file writes parse only the root element and the start tags of its children up front. The content
+     * of a top-level section is parsed when the update looks it up, and sections it never looks at are copied from the
+     * original text, so the output is spliced as with {@link #setSpliceOutput(boolean)}. This pays off with
+     * {@link #write(Object, Object, File)}, where sections that are the same in both models are not looked at; a
+     * full update looks at every section. Files are parsed in full when a {@link DocumentModifier} is given, when they
+     * are not in the writer's encoding, or when they declare a document type.
+     */
+    public TYPE setLazyParsing( final boolean lazyParsing )
+    {
+        this.lazyParsing = lazyParsing;
+        return (TYPE) this;
+    }
+
+    public boolean isLazyParsing()
+    {
+        return lazyParsing;
+    }
+
+    /**
+     * When set, the file writes write the updated document to a temporary file next to the target and rename it over
+     * the target, atomically where the file system supports that. Readers then see either the old or the new content,
+     * never a partly written file, and a failed update leaves the file as it was. The replaced file gets the
+     * permissions of the original where they can be read; ownership and hard links are not kept. Streaming writes
+     * always replace the file this way.
+     */
+    public TYPE setAtomicWrites( final boolean atomicWrites )
+    {
+        this.atomicWrites = atomicWrites;
+        return (TYPE) this;
+    }
+
+    public boolean isAtomicWrites()
+    {
+        return atomicWrites;
+    }
+
+    /**
+     * When set, the file writes force the written content to the storage device before they return and, when they
+     * replace the file (see {@link #setAtomicWrites(boolean)}), the directory entry as well, so that the update
+     * survives a crash of the system.
+     */
+    public TYPE setSyncWrites( final boolean syncWrites )
+    {
+        this.syncWrites = syncWrites;
+        return (TYPE) this;
+    }
+
+    public boolean isSyncWrites()
+    {
+        return syncWrites;
+    }
+
+    /**
+     * When set, writes to a document that is kept afterwards - {@link #write(Object, Document, Writer)} and an
+     * {@link EditSession} - remember a fingerprint of each keyed list entry and of the model object it was written
+     * from, and skip the entries where neither changed on the next write to the same document. Fingerprinting hashes
+     * every such model object, which only pays off when the same document is written repeatedly.
+     */
+    public TYPE setFingerprints( final boolean fingerprints )
+    {
+        this.fingerprints = fingerprints;
+        return (TYPE) this;
+    }
+
+    public boolean isFingerprints()
+    {
+        return fingerprints;
+    }
+
+    /**
+     * Sets the size from which the file writes map the file into memory instead of reading it through a stream, or 0
+     * (the default) to never do so. Without {@link #setSkipUnchanged(boolean)}, {@link #setSpliceOutput(boolean)} and
+     * {@link #setLazyParsing(boolean)}, the document is then parsed straight from the mapping and written out without
+     * an intermediate copy; otherwise the mapping is copied into the byte array those need in one go. On platforms
+     * where a mapped file cannot be replaced or truncated while mapped (eg. Windows), the mapping lasts until it is
+     * garbage collected, so this is best left off there.
+     */
+    public TYPE setMemoryMapThreshold( final long memoryMapThreshold )
+    {
+        this.memoryMapThreshold = memoryMapThreshold;
+        return (TYPE) this;
+    }
+
+    public long getMemoryMapThreshold()
+    {
+        return memoryMapThreshold;
+    }
+
+    /**
+     * Sets the executors of {@link #writeAsync(Object, Object, File, DocumentModifier)}: <code>compute</code> parses,
+     * updates and serializes documents, <code>io</code> reads and writes files. Either may be null for the default, a
+     * pool of daemon threads shared by all writers - one thread per processor for computing, and four for I/O.
+     */
+    public TYPE setExecutors( final Executor compute, final Executor io )
+    {
+        this.computeExecutor = compute;
+        this.ioExecutor = io;
+        return (TYPE) this;
+    }
+
+    /**
+     * Sets the pool of the builders that parse the files the writer updates, eg. one that shares builders with DTD
+     * loading disabled between several writers; see {@link SAXBuilderFactory}. By default, all writers share
+     * {@link SAXBuilderPool#getDefault()}.
+     */
+    public TYPE setParserPool( final SAXBuilderPool parserPool )
+    {
+        this.parserPool = parserPool == null ? SAXBuilderPool.getDefault() : parserPool;
+        return (TYPE) this;
+    }
+
+    public SAXBuilderPool getParserPool()
+    {
+        return parserPool;
+    }
+
+    /**
+     * Sets the encoding of the output. Without one, the file writes keep the encoding the file declares, and UTF-8 is
+     * used otherwise.
+     */
     public TYPE setEncoding( final String encoding )
     {
         format.setEncoding( encoding );
+        encodingSet = true;
         return (TYPE) this;
     }
 
@@ -0,0 +1,355 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Element;
+import org.jdom2.Parent;
+
+/**
+ * What an update pass did to the document, as element paths like <code>/project/dependencies/dependency[2]/version</code>.
+ * A position is only given for elements that have siblings of the same name. Elements created by the pass are
+ * reported once, at the root of the new subtree; removed elements are reported with their position among the children
+ * their parent had when the pass first removed one of them. Changes made by a {@link DocumentModifier} are not
+ * included.
+ */
+public final class ChangeSet
+{
+
+    public static final ChangeSet EMPTY =
+        new ChangeSet( Collections.<String> emptyList(), Collections.<String> emptyList(),
+                       Collections.<String> emptyList() );
+
+    /**
+     * An element removed by an update pass, with the children its parent had before the pass first removed from it.
+     * The list is shared by all removals from the same parent.
+     */
+    static final class Removal
+    {
+
+        final Element element;
+
+        final Element parent;
+
+        final List<Element> siblings;
+
+        Removal( final Element element, final Element parent, final List<Element> siblings )
+        {
+            this.element = element;
+            this.parent = parent;
+            this.siblings = siblings;
+        }
+
+    }
+
+    private final List<String> created;
+
+    private final List<String> removed;
+
+    private final List<String> changed;
+
+    private ChangeSet( final List<String> created, final List<String> removed, final List<String> changed )
+    {
+        this.created = Collections.unmodifiableList( created );
+        this.removed = Collections.unmodifiableList( removed );
+        this.changed = Collections.unmodifiableList( changed );
+    }
+
+    /**
+     * Resolves the recorded elements to paths. Created elements below other created elements, and elements that are
+     * no longer part of the document (unless removed by the pass), are left out.
+     */
+    static ChangeSet create( final List<Element> createdElements, final List<Removal> removals,
+                             final List<Element> changedElements )
+    {
+        if ( createdElements.isEmpty() && removals.isEmpty() && changedElements.isEmpty() )
+        {
+            return EMPTY;
+        }
+
+        final Map<Element, Boolean> createdSet = new IdentityHashMap<Element, Boolean>();
+        for ( final Element element : createdElements )
+        {
+            createdSet.put( element, Boolean.TRUE );
+        }
+
+        final Map<Element, String> paths = new IdentityHashMap<Element, String>();
+        final Map<Parent, Map<Element, String>> steps = new IdentityHashMap<Parent, Map<Element, String>>();
+
+        final List<String> created = new ArrayList<String>( createdElements.size() );
+        for ( final Element element : createdElements )
+        {
+            if ( !insideCreated( element.getParentElement(), createdSet ) )
+            {
+                final String path = path( element, paths, steps );
+                if ( path != null )
+                {
+                    created.add( path );
+                }
+            }
+        }
+
+        final List<String> changed = new ArrayList<String>( changedElements.size() );
+        for ( final Element element : changedElements )
+        {
+            if ( !insideCreated( element, createdSet ) )
+            {
+                final String path = path( element, paths, steps );
+                if ( path != null )
+                {
+                    changed.add( path );
+                }
+            }
+        }
+
+        final Map<Element, Removal> removedSet = new IdentityHashMap<Element, Removal>();
+        for ( final Removal removal : removals )
+        {
+            removedSet.put( removal.element, removal );
+        }
+        final Map<Element, String> removedPaths = new IdentityHashMap<Element, String>();
+        final Map<List<Element>, Map<Element, String>> removedSteps =
+            new IdentityHashMap<List<Element>, Map<Element, String>>();
+
+        final List<String> removed = new ArrayList<String>( removals.size() );
+        for ( final Removal removal : removals )
+        {
+            final String path = path( removal, removedSet, removedPaths, removedSteps, paths, steps );
+            if ( path != null )
+            {
+                removed.add( path );
+            }
+        }
+
+        return new ChangeSet( created, removed, changed );
+    }
+
+    /**
+     * Wraps paths that were resolved already, eg. by a streaming update.
+     */
+    static ChangeSet fromPaths( final List<String> created, final List<String> removed, final List<String> changed )
+    {
+        if ( created.isEmpty() && removed.isEmpty() && changed.isEmpty() )
+        {
+            return EMPTY;
+        }
+        return new ChangeSet( created, removed, changed );
+    }
+
+    public List<String> getCreated()
+    {
+        return created;
+    }
+
+    public List<String> getRemoved()
+    {
+        return removed;
+    }
+
+    /**
+     * @return the elements that existed before the pass and had their text replaced
+     */
+    public List<String> getChanged()
+    {
+        return changed;
+    }
+
+    public int getCreatedCount()
+    {
+        return created.size();
+    }
+
+    public int getRemovedCount()
+    {
+        return removed.size();
+    }
+
+    public int getChangedCount()
+    {
+        return changed.size();
+    }
+
+    public int size()
+    {
+        return created.size() + removed.size() + changed.size();
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ChangeSet[created=" + created + ", removed=" + removed + ", changed=" + changed + "]";
+    }
+
+    private static boolean insideCreated( final Element element, final Map<Element, Boolean> createdSet )
+    {
+        Element current = element;
+        while ( current != null )
+        {
+            if ( createdSet.containsKey( current ) )
+            {
+                return true;
+            }
+            current = current.getParentElement();
+        }
+        return false;
+    }
+
+    /**
+     * The path of a removed element: the path of its parent - or, if the parent was removed as well, the path the
+     * parent was removed from - followed by the element's step among the children the parent had before the removals.
+     */
+    private static String path( final Removal removal, final Map<Element, Removal> removedSet,
+                                final Map<Element, String> removedPaths,
+                                final Map<List<Element>, Map<Element, String>> removedSteps,
+                                final Map<Element, String> paths, final Map<Parent, Map<Element, String>> steps )
+    {
+        final String known = removedPaths.get( removal.element );
+        if ( known != null )
+        {
+            return known;
+        }
+
+        String prefix = path( removal.parent, paths, steps );
+        if ( prefix == null )
+        {
+            final Removal parentRemoval = removedSet.get( removal.parent );
+            if ( parentRemoval == null )
+            {
+                return null;
+            }
+            prefix = path( parentRemoval, removedSet, removedPaths, removedSteps, paths, steps );
+            if ( prefix == null )
+            {
+                return null;
+            }
+        }
+
+        Map<Element, String> siblingSteps = removedSteps.get( removal.siblings );
+        if ( siblingSteps == null )
+        {
+            siblingSteps = steps( removal.siblings );
+            removedSteps.put( removal.siblings, siblingSteps );
+        }
+        String step = siblingSteps.get( removal.element );
+        if ( step == null )
+        {
+            // added to the parent after the first removal from it.
+            step = removal.element.getQualifiedName();
+        }
+
+        final String result = prefix + "/" + step;
+        removedPaths.put( removal.element, result );
+        return result;
+    }
+
+    private static String path( final Element element, final Map<Element, String> paths,
+                                final Map<Parent, Map<Element, String>> steps )
+    {
+        final String known = paths.get( element );
+        if ( known != null )
+        {
+            return known;
+        }
+
+        final Parent parent = element.getParent();
+        String prefix;
+        if ( parent instanceof Element )
+        {
+            prefix = path( (Element) parent, paths, steps );
+            if ( prefix == null )
+            {
+                return null;
+            }
+        }
+        else if ( parent != null && parent.getDocument() != null )
+        {
+            prefix = "";
+        }
+        else
+        {
+            return null;
+        }
+
+        final String result = prefix + "/" + step( element, parent, steps );
+        paths.put( element, result );
+        return result;
+    }
+
+    /**
+     * The last path segment of <code>element</code>. The segments of all children of the parent are computed in one
+     * pass, so resolving many siblings does not rescan the parent for each of them.
+     */
+    private static String step( final Element element, final Parent parent,
+                                final Map<Parent, Map<Element, String>> steps )
+    {
+        if ( !( parent instanceof Element ) )
+        {
+            return element.getQualifiedName();
+        }
+
+        Map<Element, String> known = steps.get( parent );
+        if ( known == null )
+        {
+            known = steps( ( (Element) parent ).getChildren() );
+            steps.put( parent, known );
+        }
+        return known.get( element );
+    }
+
+    /**
+     * @return the last path segment of each of <code>siblings</code>
+     */
+    private static Map<Element, String> steps( final List<Element> siblings )
+    {
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        for ( final Element sibling : siblings )
+        {
+            final Integer count = counts.get( sibling.getQualifiedName() );
+            counts.put( sibling.getQualifiedName(), count == null ? 1 : count + 1 );
+        }
+
+        final Map<Element, String> known = new IdentityHashMap<Element, String>( siblings.size() );
+        final Map<String, Integer> positions = new HashMap<String, Integer>();
+        for ( final Element sibling : siblings )
+        {
+            final String name = sibling.getQualifiedName();
+            if ( counts.get( name ) > 1 )
+            {
+                final Integer position = positions.get( name );
+                final int next = position == null ? 1 : position + 1;
+                positions.put( name, next );
+                known.put( sibling, name + "[" + next + "]" );
+            }
+            else
+            {
+                known.put( sibling, name );
+            }
+        }
+        return known;
+    }
+
+}
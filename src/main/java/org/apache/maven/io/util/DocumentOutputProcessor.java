@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom2.CDATA;
+import org.jdom2.Comment;
+import org.jdom2.Content;
+import org.jdom2.DocType;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.EntityRef;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.Text;
+import org.jdom2.Verifier;
+import org.jdom2.output.support.AbstractXMLOutputProcessor;
+import org.jdom2.output.support.FormatStack;
+import org.jdom2.output.support.Walker;
+import org.jdom2.util.NamespaceStack;
+
+/**
+ * Output processor used by {@link AbstractJDOMWriter}: corrects the trailing newlines of comments before the root
+ * element, and gives {@link SpliceOutput} access to the printing of single nodes.
+ */
+class DocumentOutputProcessor
+    extends AbstractXMLOutputProcessor
+{
+
+    /**
+     * This will handle printing of a {@link Document}.
+     *
+     * @param out    <code>Writer</code> to use.
+     * @param fstack the FormatStack
+     * @param nstack the NamespaceStack
+     * @param doc    <code>Document</code> to write.
+     * @throws IOException if the destination Writer fails
+     */
+    @Override protected void printDocument(Writer out, FormatStack fstack, NamespaceStack nstack, Document doc)
+            throws IOException
+    {
+
+        // If there is no root element then we cannot use the normal ways to
+        // access the ContentList because Document throws an exception.
+        // so we hack it and just access it by index.
+        List<Content> list = doc.hasRootElement() ? doc.getContent() :
+                new ArrayList<Content>(doc.getContentSize());
+        if (list.isEmpty()) {
+            final int sz = doc.getContentSize();
+            for (int i = 0; i < sz; i++) {
+                list.add(doc.getContent(i));
+            }
+        }
+
+        printDeclaration(out, fstack);
+
+        Walker walker = buildWalker(fstack, list, true);
+        if (walker.hasNext()) {
+            while (walker.hasNext()) {
+
+                final Content c = walker.next();
+                // we do not ignore Text-like things in the Document.
+                // the walker creates the indenting for us.
+                if (c == null) {
+                    // but, what we do is ensure it is all whitespace, and not CDATA
+                    final String padding = walker.text();
+                    if (padding != null && Verifier.isAllXMLWhitespace(padding) &&
+                            !walker.isCDATA()) {
+                        // we do not use the escaping or text* method because this
+                        // content is outside of the root element, and thus is not
+                        // strict text.
+                        write(out, padding);
+                    }
+                } else {
+                    switch (c.getCType()) {
+                        case Comment :
+                            printComment(out, fstack, (Comment)c);
+                            // This modification we have made to the overridden method in order
+                            // to correct newline declarations.
+                            write(out, fstack.getLineSeparator());
+                            break;
+                        case DocType :
+                            printDocType(out, fstack, (DocType)c);
+                            break;
+                        case Element :
+                            printElement(out, fstack, nstack, (Element)c);
+                            if (walker.hasNext())
+                            {
+                                // This modification we have made to the overridden method in order
+                                // to correct newline declarations.
+                                write(out, fstack.getLineSeparator());
+                            }
+                            break;
+                        case ProcessingInstruction :
+                            printProcessingInstruction(out, fstack,
+                                    (ProcessingInstruction)c);
+                            break;
+                        case Text :
+                            final String padding = ((Text)c).getText();
+                            if (padding != null && Verifier.isAllXMLWhitespace(padding)) {
+                                // we do not use the escaping or text* method because this
+                                // content is outside of the root element, and thus is not
+                                // strict text.
+                                write(out, padding);
+                            }
+                        default :
+                            // do nothing.
+                    }
+                }
+
+            }
+
+            if (fstack.getLineSeparator() != null) {
+                write(out, fstack.getLineSeparator());
+            }
+        }
+    }
+
+    /**
+     * Prints a single node the way it would be printed as part of its document; <code>nstack</code> has to hold the
+     * namespace declarations in scope at the node.
+     */
+    void printContent( final Writer out, final FormatStack fstack, final NamespaceStack nstack, final Content content )
+        throws IOException
+    {
+        switch ( content.getCType() )
+        {
+            case Element:
+                printElement( out, fstack, nstack, (Element) content );
+                break;
+            case Text:
+                printText( out, fstack, (Text) content );
+                break;
+            case CDATA:
+                printCDATA( out, fstack, (CDATA) content );
+                break;
+            case Comment:
+                printComment( out, fstack, (Comment) content );
+                break;
+            case ProcessingInstruction:
+                printProcessingInstruction( out, fstack, (ProcessingInstruction) content );
+                break;
+            case EntityRef:
+                printEntityRef( out, fstack, (EntityRef) content );
+                break;
+            case DocType:
+                printDocType( out, fstack, (DocType) content );
+                break;
+            default:
+                // nothing else can be a child of an element.
+        }
+    }
+
+}
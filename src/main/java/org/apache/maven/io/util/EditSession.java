@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+
+/**
+ * Repeated writes of models to one file, keeping the parsed document between them. Each write updates the document
+ * in memory and writes it out like {@link AbstractJDOMWriter#write(Object, File, DocumentModifier)}; the file is only
+ * parsed again when its modification time or length differ from what the session last saw, or after
+ * {@link #reload()}. With {@link AbstractJDOMWriter#setFingerprints(boolean)}, list entries that are unchanged on
+ * both sides since the previous write are skipped. The settings of the writer are read on each write.
+ * <p>
+ * A change on disk that keeps both the length and the modification time - possible within the timestamp resolution
+ * of the file system - goes unnoticed; call {@link #reload()} when the file may have been edited that way. Sessions
+ * are not thread safe.
+ */
+public final class EditSession<T>
+{
+
+    private final AbstractJDOMWriter<T, ?> writer;
+
+    private final File file;
+
+    private Document document;
+
+    private byte[] bytes;
+
+    private long lastModified;
+
+    private long length;
+
+    EditSession( final AbstractJDOMWriter<T, ?> writer, final File file )
+    {
+        this.writer = writer;
+        this.file = file;
+    }
+
+    public ChangeSet write( final T source )
+        throws IOException, JDOMException
+    {
+        return write( null, source, null );
+    }
+
+    public ChangeSet write( final T source, final DocumentModifier modifier )
+        throws IOException, JDOMException
+    {
+        return write( null, source, modifier );
+    }
+
+    /**
+     * Updates the file from <code>source</code>. When <code>previous</code> is given, it has to be the model the file
+     * holds, eg. the one of the last write; parts of the model that are the same in both are then left alone where
+     * the writer supports that. It is ignored when the file changed on disk since the session last saw it.
+     *
+     * @return the changes the update made to the document, not including those of <code>modifier</code>
+     */
+    public ChangeSet write( final T previous, final T source, final DocumentModifier modifier )
+        throws IOException, JDOMException
+    {
+        final boolean changedOnDisk =
+            document != null && ( file.lastModified() != lastModified || file.length() != length );
+        if ( document == null || changedOnDisk )
+        {
+            load();
+        }
+
+        boolean updated = false;
+        try
+        {
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream( bytes.length + 256 );
+            final T known = changedOnDisk ? null : previous;
+            final UpdateContext context =
+                writer.render( known, source, document, null, bytes, writer.format, modifier, true, true, buffer );
+            if ( buffer.size() > 0 )
+            {
+                final byte[] result = buffer.toByteArray();
+                writer.writeBytes( file, result );
+                bytes = result;
+                lastModified = file.lastModified();
+                length = file.length();
+            }
+            updated = true;
+            return context.getChangeSet();
+        }
+        finally
+        {
+            if ( !updated )
+            {
+                // the document may be half updated.
+                reload();
+            }
+        }
+    }
+
+    /**
+     * Makes the next write parse the file again.
+     */
+    public void reload()
+    {
+        document = null;
+        bytes = null;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    private void load()
+        throws IOException, JDOMException
+    {
+        // taken before reading, so that a change made meanwhile is seen by the next write.
+        final long modified = file.lastModified();
+        final long size = file.length();
+        final byte[] content = writer.readBytes( file );
+        document = writer.parse( content, file );
+        bytes = content;
+        lastModified = modified;
+        length = size;
+    }
+
+}
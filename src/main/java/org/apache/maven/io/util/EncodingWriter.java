@@ -0,0 +1,362 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A writer that encodes straight into an {@link OutputStream}, a {@link WritableByteChannel} or a {@link ByteBuffer}.
+ * The encoder and its buffers are pooled per thread and reused by the next writer the thread creates for the same
+ * charset. Characters below 0x80 are copied as bytes, without the encoder, when the charset is ASCII compatible.
+ * <p>
+ * Closing the writer flushes, but does not close, what it writes to. Unmappable characters are replaced as by
+ * {@link java.io.OutputStreamWriter}.
+ */
+final class EncodingWriter
+    extends Writer
+{
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ThreadLocal<Buffers> POOL = new ThreadLocal<Buffers>();
+
+    private static final class Buffers
+    {
+
+        final CharBuffer chars = CharBuffer.allocate( BUFFER_SIZE / 8 );
+
+        final byte[] array = new byte[BUFFER_SIZE];
+
+        final ByteBuffer bytes = ByteBuffer.wrap( array );
+
+        CharsetEncoder encoder;
+
+    }
+
+    private final OutputStream stream;
+
+    private final WritableByteChannel channel;
+
+    private final ByteBuffer target;
+
+    private final boolean ascii;
+
+    private Buffers buffers;
+
+    private CharBuffer chars;
+
+    private ByteBuffer bytes;
+
+    private byte[] array;
+
+    private CharsetEncoder encoder;
+
+    private EncodingWriter( final OutputStream stream, final WritableByteChannel channel, final ByteBuffer target,
+                            final String encoding )
+        throws UnsupportedEncodingException
+    {
+        this.stream = stream;
+        this.channel = channel;
+        this.target = target;
+
+        final Charset charset;
+        try
+        {
+            charset = Charset.forName( encoding );
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            throw new UnsupportedEncodingException( encoding );
+        }
+        final String name = charset.name();
+        ascii = "UTF-8".equals( name ) || "US-ASCII".equals( name ) || "ISO-8859-1".equals( name );
+
+        buffers = POOL.get();
+        if ( buffers == null )
+        {
+            buffers = new Buffers();
+        }
+        else
+        {
+            // taken while in use, so that a writer opened meanwhile gets its own.
+            POOL.set( null );
+        }
+        if ( buffers.encoder == null || !buffers.encoder.charset().equals( charset ) )
+        {
+            final CharsetEncoder created = charset.newEncoder();
+            created.onMalformedInput( CodingErrorAction.REPLACE );
+            created.onUnmappableCharacter( CodingErrorAction.REPLACE );
+            buffers.encoder = created;
+        }
+        else
+        {
+            buffers.encoder.reset();
+        }
+        chars = buffers.chars;
+        chars.clear();
+        bytes = buffers.bytes;
+        bytes.clear();
+        array = buffers.array;
+        encoder = buffers.encoder;
+    }
+
+    static EncodingWriter to( final OutputStream stream, final String encoding )
+        throws UnsupportedEncodingException
+    {
+        return new EncodingWriter( stream, null, null, encoding );
+    }
+
+    static EncodingWriter to( final WritableByteChannel channel, final String encoding )
+        throws UnsupportedEncodingException
+    {
+        return new EncodingWriter( null, channel, null, encoding );
+    }
+
+    /**
+     * @param target receives the output; a {@link java.nio.BufferOverflowException} is thrown when it is full
+     */
+    static EncodingWriter to( final ByteBuffer target, final String encoding )
+        throws UnsupportedEncodingException
+    {
+        return new EncodingWriter( null, null, target, encoding );
+    }
+
+    @Override
+    public void write( final int c )
+        throws IOException
+    {
+        ensureOpen();
+        put( (char) c );
+    }
+
+    @Override
+    public void write( final char[] cbuf, final int off, final int len )
+        throws IOException
+    {
+        ensureOpen();
+        final int end = off + len;
+        int i = off;
+        while ( i < end )
+        {
+            final char c = cbuf[i];
+            if ( ascii && c < 0x80 && pendingEncoded() )
+            {
+                int position = bytes.position();
+                while ( i < end && cbuf[i] < 0x80 )
+                {
+                    if ( position == array.length )
+                    {
+                        bytes.position( position );
+                        drain();
+                        position = 0;
+                    }
+                    array[position++] = (byte) cbuf[i++];
+                }
+                bytes.position( position );
+            }
+            else
+            {
+                put( c );
+                i++;
+            }
+        }
+    }
+
+    @Override
+    public void write( final String str, final int off, final int len )
+        throws IOException
+    {
+        ensureOpen();
+        final int end = off + len;
+        int i = off;
+        while ( i < end )
+        {
+            final char c = str.charAt( i );
+            if ( ascii && c < 0x80 && pendingEncoded() )
+            {
+                int position = bytes.position();
+                char next;
+                while ( i < end && ( next = str.charAt( i ) ) < 0x80 )
+                {
+                    if ( position == array.length )
+                    {
+                        bytes.position( position );
+                        drain();
+                        position = 0;
+                    }
+                    array[position++] = (byte) next;
+                    i++;
+                }
+                bytes.position( position );
+            }
+            else
+            {
+                put( c );
+                i++;
+            }
+        }
+    }
+
+    @Override
+    public void flush()
+        throws IOException
+    {
+        ensureOpen();
+        encode( false );
+        drain();
+        if ( stream != null )
+        {
+            stream.flush();
+        }
+    }
+
+    /**
+     * Writes out what is left to encode and returns the buffers to the pool.
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        if ( buffers == null )
+        {
+            return;
+        }
+        try
+        {
+            encode( true );
+            while ( encoder.flush( bytes ).isOverflow() )
+            {
+                drain();
+            }
+            drain();
+            if ( stream != null )
+            {
+                stream.flush();
+            }
+        }
+        finally
+        {
+            release();
+        }
+    }
+
+    /**
+     * Returns the buffers to the pool without writing out what is left, eg. after a failure.
+     */
+    void release()
+    {
+        if ( buffers != null )
+        {
+            POOL.set( buffers );
+            buffers = null;
+            chars = null;
+            bytes = null;
+            array = null;
+            encoder = null;
+        }
+    }
+
+    private void ensureOpen()
+        throws IOException
+    {
+        if ( buffers == null )
+        {
+            throw new IOException( "Writer closed" );
+        }
+    }
+
+    /**
+     * Encodes pending characters, if any, so that bytes can be appended directly.
+     *
+     * @return false if a character is still pending, ie. the first half of a surrogate pair
+     */
+    private boolean pendingEncoded()
+        throws IOException
+    {
+        if ( chars.position() > 0 )
+        {
+            encode( false );
+        }
+        return chars.position() == 0;
+    }
+
+    private void put( final char c )
+        throws IOException
+    {
+        if ( !chars.hasRemaining() )
+        {
+            encode( false );
+        }
+        chars.put( c );
+    }
+
+    private void encode( final boolean endOfInput )
+        throws IOException
+    {
+        chars.flip();
+        while ( true )
+        {
+            final CoderResult result = encoder.encode( chars, bytes, endOfInput );
+            if ( result.isOverflow() )
+            {
+                drain();
+            }
+            else
+            {
+                break;
+            }
+        }
+        chars.compact();
+    }
+
+    private void drain()
+        throws IOException
+    {
+        final int length = bytes.position();
+        if ( length == 0 )
+        {
+            return;
+        }
+        if ( stream != null )
+        {
+            stream.write( array, 0, length );
+        }
+        else if ( channel != null )
+        {
+            bytes.flip();
+            while ( bytes.hasRemaining() )
+            {
+                channel.write( bytes );
+            }
+        }
+        else
+        {
+            target.put( array, 0, length );
+        }
+        bytes.clear();
+    }
+
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Reading of the files the writers update: either into a byte array of the file's size or, for large files, by
+ * mapping them into memory.
+ */
+final class FileInput
+{
+
+    /**
+     * Enough for any XML declaration that is not padded with whitespace.
+     */
+    private static final int HEAD_SIZE = 1024;
+
+    private FileInput()
+    {
+    }
+
+    /**
+     * @param mapThreshold the size from which the file is mapped rather than read, or 0 to always read it
+     * @return the content of <code>file</code>
+     */
+    static byte[] read( final File file, final long mapThreshold )
+        throws IOException
+    {
+        final long length = file.length();
+        if ( mapThreshold > 0 && length >= mapThreshold )
+        {
+            final ByteBuffer mapped = map( file );
+            final byte[] bytes = new byte[mapped.remaining()];
+            mapped.get( bytes );
+            return bytes;
+        }
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            byte[] bytes = new byte[(int) Math.min( length, Integer.MAX_VALUE - 8 )];
+            int size = 0;
+            while ( true )
+            {
+                if ( size == bytes.length )
+                {
+                    final int next = in.read();
+                    if ( next < 0 )
+                    {
+                        return bytes;
+                    }
+                    // the file grew since its length was taken.
+                    bytes = Arrays.copyOf( bytes, Math.max( 256, bytes.length * 2 ) );
+                    bytes[size++] = (byte) next;
+                }
+                final int count = in.read( bytes, size, bytes.length - size );
+                if ( count < 0 )
+                {
+                    return Arrays.copyOf( bytes, size );
+                }
+                size += count;
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * Maps <code>file</code> into memory, read-only. The mapping stays valid after the file is closed, and on some
+     * platforms (eg. Windows) keeps the file from being overwritten until it is garbage collected.
+     */
+    static ByteBuffer map( final File file )
+        throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            final FileChannel channel = raf.getChannel();
+            return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return the first bytes of <code>buffer</code>, enough to detect the encoding of an XML document from
+     */
+    static byte[] head( final ByteBuffer buffer )
+    {
+        final byte[] head = new byte[Math.min( HEAD_SIZE, buffer.remaining() )];
+        buffer.duplicate().get( head );
+        return head;
+    }
+
+    /**
+     * @param input a stream that supports {@link InputStream#mark(int)}; it is reset to where it was
+     * @return the next bytes of <code>input</code>, enough to detect the encoding of an XML document from
+     */
+    static byte[] head( final InputStream input )
+        throws IOException
+    {
+        final byte[] head = new byte[HEAD_SIZE];
+        input.mark( HEAD_SIZE );
+        int size = 0;
+        try
+        {
+            int count;
+            while ( size < HEAD_SIZE && ( count = input.read( head, size, HEAD_SIZE - size ) ) > 0 )
+            {
+                size += count;
+            }
+        }
+        finally
+        {
+            input.reset();
+        }
+        return Arrays.copyOf( head, size );
+    }
+
+    /**
+     * @return a stream over the remaining bytes of <code>buffer</code>, leaving the buffer's position alone
+     */
+    static InputStream newInputStream( final ByteBuffer buffer )
+    {
+        return new ByteBufferInputStream( buffer.duplicate() );
+    }
+
+    private static final class ByteBufferInputStream
+        extends InputStream
+    {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream( final ByteBuffer buffer )
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read( final byte[] bytes, final int offset, final int length )
+        {
+            if ( length == 0 )
+            {
+                return 0;
+            }
+            if ( !buffer.hasRemaining() )
+            {
+                return -1;
+            }
+            final int count = Math.min( length, buffer.remaining() );
+            buffer.get( bytes, offset, count );
+            return count;
+        }
+
+        @Override
+        public long skip( final long count )
+        {
+            final int skipped = (int) Math.max( 0, Math.min( count, buffer.remaining() ) );
+            buffer.position( buffer.position() + skipped );
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Text;
+
+/**
+ * Remembers, for elements of documents that outlive a write, the fingerprint of the model object each was last
+ * updated from and of its own content afterwards. When both still match on the next write, the element is known to
+ * be up to date and its update can be skipped. Entries go away with their elements.
+ */
+final class Fingerprints
+{
+
+    private final Map<Element, long[]> known = Collections.synchronizedMap( new WeakHashMap<Element, long[]>() );
+
+    boolean isUpToDate( final Object value, final Element element )
+    {
+        final long[] recorded = known.get( element );
+        return recorded != null && recorded[0] == ModelEquality.fingerprint( value )
+            && recorded[1] == fingerprint( element );
+    }
+
+    void record( final Object value, final Element element )
+    {
+        known.put( element, new long[] { ModelEquality.fingerprint( value ), fingerprint( element ) } );
+    }
+
+    /**
+     * A hash of the names, attributes and text of <code>element</code> and its descendants.
+     */
+    static long fingerprint( final Element element )
+    {
+        long hash = ModelEquality.mix( ModelEquality.fingerprint( element.getName() ),
+                                       ModelEquality.fingerprint( element.getNamespaceURI() ) );
+        if ( element.hasAttributes() )
+        {
+            for ( final Attribute attribute : element.getAttributes() )
+            {
+                hash = ModelEquality.mix( hash, ModelEquality.fingerprint( attribute.getQualifiedName() ) );
+                hash = ModelEquality.mix( hash, ModelEquality.fingerprint( attribute.getValue() ) );
+            }
+        }
+        for ( final Content content : element.getContent() )
+        {
+            if ( content instanceof Element )
+            {
+                hash = ModelEquality.mix( hash, fingerprint( (Element) content ) );
+            }
+            else if ( content instanceof Text )
+            {
+                hash = ModelEquality.mix( hash, ModelEquality.fingerprint( ( (Text) content ).getText() ) );
+            }
+        }
+        return hash;
+    }
+
+}
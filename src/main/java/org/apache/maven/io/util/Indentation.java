@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Text;
+
+/**
+ * Precomputed whitespace placed in front of newly inserted elements: a line break followed by one indent unit per
+ * depth level. Levels are built once and shared, so deep trees cost no string building per insert.
+ */
+public final class Indentation
+{
+
+    public static final String DEFAULT_UNIT = "  ";
+
+    public static final Indentation DEFAULT = new Indentation( DEFAULT_UNIT );
+
+    private static final String LINE_SEPARATOR = "\n";
+
+    private static final int INITIAL_LEVELS = 16;
+
+    private final String unit;
+
+    private volatile String[] levels;
+
+    public Indentation( final String unit )
+    {
+        this.unit = unit;
+        this.levels = buildLevels( null, INITIAL_LEVELS );
+    }
+
+    public String getUnit()
+    {
+        return unit;
+    }
+
+    /**
+     * @return the line separator followed by <code>depth</code> indent units
+     */
+    public String get( final int depth )
+    {
+        String[] current = levels;
+        if ( depth >= current.length )
+        {
+            current = grow( depth );
+        }
+        return current[depth];
+    }
+
+    private synchronized String[] grow( final int depth )
+    {
+        String[] current = levels;
+        if ( depth >= current.length )
+        {
+            current = buildLevels( current, Math.max( depth + 1, current.length * 2 ) );
+            levels = current;
+        }
+        return current;
+    }
+
+    private String[] buildLevels( final String[] existing, final int size )
+    {
+        final String[] result = new String[size];
+        int start = 0;
+        if ( existing != null )
+        {
+            System.arraycopy( existing, 0, result, 0, existing.length );
+            start = existing.length;
+        }
+        for ( int i = start; i < size; i++ )
+        {
+            result[i] = i == 0 ? LINE_SEPARATOR : result[i - 1] + unit;
+        }
+        return result;
+    }
+
+    /**
+     * Guesses the indent unit of a document from the whitespace in front of the first child element of its root.
+     *
+     * @return the detected unit, or null when the root's children are not on lines of their own
+     */
+    public static String detectUnit( final Element root )
+    {
+        final int size = root.getContentSize();
+        for ( int i = 1; i < size; i++ )
+        {
+            final Content content = root.getContent( i );
+            if ( !( content instanceof Element ) )
+            {
+                continue;
+            }
+
+            final Content previous = root.getContent( i - 1 );
+            if ( previous instanceof Text )
+            {
+                final String text = ( (Text) previous ).getText();
+                final int lineStart = text.lastIndexOf( '\n' );
+                if ( lineStart > -1 && lineStart < text.length() - 1 )
+                {
+                    final String unit = text.substring( lineStart + 1 );
+                    if ( unit.trim().length() == 0 )
+                    {
+                        return unit;
+                    }
+                }
+            }
+            return null;
+        }
+        return null;
+    }
+
+}
@@ -15,6 +15,13 @@
  */
 package org.apache.maven.io.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Text;
+
 /**
  * Class Counter.
  * 
@@ -37,15 +44,68 @@ public class IndentationCounter
      */
     private final int level;
 
+    /**
+     * Field context.
+     */
+    private final UpdateContext context;
+
+    /**
+     * Parent of the last element inserted through this counter, see
+     * {@link WriterUtils#insertAtPreferredLocation(Element, Element, IndentationCounter)}.
+     */
+    private Element insertionParent;
+
+    /**
+     * Field insertionElement.
+     */
+    private Element insertionElement;
+
+    /**
+     * Field insertionContentIndex.
+     */
+    private int insertionContentIndex;
+
+    /**
+     * Field insertionContentSize.
+     */
+    private int insertionContentSize;
+
+    /**
+     * Field insertionElementCount.
+     */
+    private int insertionElementCount;
+
+    /**
+     * Field insertionText.
+     */
+    private Text insertionText;
+
+    /**
+     * Parent that the children collected in {@link #pending} still have to be spliced into, see
+     * {@link WriterUtils#appendAtPreferredLocation(Element, Element, IndentationCounter)}.
+     */
+    private Element pendingParent;
+
+    /**
+     * Field pending.
+     */
+    private List<Content> pending;
+
     // ----------------/
     // - Constructors -/
     // ----------------/
 
     public IndentationCounter( final int depthLevel )
     {
-        level = depthLevel;
+        this( depthLevel, null );
     } // -- org.apache.maven.model.io.jdom.Counter(int)
 
+    public IndentationCounter( final int depthLevel, final UpdateContext context )
+    {
+        level = depthLevel;
+        this.context = context;
+    } // -- org.apache.maven.model.io.jdom.Counter(int, UpdateContext)
+
     // -----------/
     // - Methods -/
     // -----------/
@@ -70,6 +130,147 @@ public class IndentationCounter
         return level;
     } // -- int getDepth()
 
+    /**
+     * Method getContext.
+     * 
+     * @return UpdateContext, or null when the counter was created outside of a writer's update pass
+     */
+    public UpdateContext getContext()
+    {
+        return context;
+    } // -- UpdateContext getContext()
+
+    /**
+     * Method nextLevel.
+     * 
+     * Within an update pass this hands out the pass's reusable frame for the next depth, reset to its initial state;
+     * like a stack frame it is only valid until another counter is entered at the same depth. Counters created outside
+     * of a pass get a fresh instance instead.
+     * 
+     * @return a counter one level deeper, sharing this counter's context
+     */
+    public IndentationCounter nextLevel()
+    {
+        if ( context != null )
+        {
+            return context.enterLevel( level + 1 );
+        }
+        return new IndentationCounter( level + 1 );
+    } // -- IndentationCounter nextLevel()
+
+    /**
+     * Method reset.
+     */
+    void reset()
+    {
+        currentIndex = 0;
+        insertionParent = null;
+        insertionElement = null;
+        insertionText = null;
+        pendingParent = null;
+        if ( pending != null )
+        {
+            pending.clear();
+        }
+    } // -- void reset()
+
+    /**
+     * Method canResumeInsertion.
+     * 
+     * @param parent
+     * @return true when the content of <code>parent</code> is still the way the last insertion through this counter
+     *         left it, so a new walk for the current index may start from the remembered position
+     */
+    boolean canResumeInsertion( final Element parent )
+    {
+        return insertionParent == parent && insertionElementCount <= currentIndex + 1
+            && parent.getContentSize() == insertionContentSize && parent.getContent( insertionContentIndex - 1 ) == insertionElement;
+    } // -- boolean canResumeInsertion( Element )
+
+    /**
+     * Method setInsertionCursor.
+     * 
+     * @param parent
+     * @param child the inserted element
+     * @param contentIndex content index just after the inserted element
+     * @param elementCount number of elements in front of contentIndex
+     * @param text the whitespace preceding the inserted element
+     */
+    void setInsertionCursor( final Element parent, final Element child, final int contentIndex,
+                             final int elementCount, final Text text )
+    {
+        insertionParent = parent;
+        insertionElement = child;
+        insertionContentIndex = contentIndex;
+        insertionContentSize = parent.getContentSize();
+        insertionElementCount = elementCount;
+        insertionText = text;
+    } // -- void setInsertionCursor( Element, Element, int, int, Text )
+
+    /**
+     * Method getInsertionContentIndex.
+     * 
+     * @return int
+     */
+    int getInsertionContentIndex()
+    {
+        return insertionContentIndex;
+    } // -- int getInsertionContentIndex()
+
+    /**
+     * Method getInsertionElementCount.
+     * 
+     * @return int
+     */
+    int getInsertionElementCount()
+    {
+        return insertionElementCount;
+    } // -- int getInsertionElementCount()
+
+    /**
+     * Method getInsertionText.
+     * 
+     * @return Text
+     */
+    Text getInsertionText()
+    {
+        return insertionText;
+    } // -- Text getInsertionText()
+
+    /**
+     * Method getPendingParent.
+     * 
+     * @return Element
+     */
+    Element getPendingParent()
+    {
+        return pendingParent;
+    } // -- Element getPendingParent()
+
+    /**
+     * Method setPendingParent.
+     * 
+     * @param parent
+     */
+    void setPendingParent( final Element parent )
+    {
+        pendingParent = parent;
+    } // -- void setPendingParent( Element )
+
+    /**
+     * Method getPending.
+     * 
+     * @return the (reused) list of whitespace and element pairs waiting to be spliced into the pending parent
+     */
+    List<Content> getPending()
+    {
+        if ( pending == null )
+        {
+            pending = new ArrayList<Content>();
+        }
+        return pending;
+    } // -- List<Content> getPending()
+
     /**
      * Method increaseCount.
      */
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import org.jdom2.Element;
+
+/**
+ * Pairs the entries of a model list with existing child elements by identity instead of by position. Used by
+ * {@link WriterUtils#updateKeyedList(IndentationCounter, Element, java.util.Collection, String, KeyedListUpdater)}.
+ */
+public abstract class KeyedListUpdater<V>
+{
+
+    private final Class<V> type;
+
+    /**
+     * @param type the class of the list entries, which the entries of the (raw) model list are checked against
+     */
+    protected KeyedListUpdater( final Class<V> type )
+    {
+        this.type = type;
+    }
+
+    final V cast( final Object value )
+    {
+        return type.cast( value );
+    }
+
+    /**
+     * @return the identity of a model entry, or null if it has none (which disables key matching for the list)
+     */
+    public abstract String getKey( V value );
+
+    /**
+     * @return the identity of an existing element, computed the same way as {@link #getKey(Object)}
+     */
+    public abstract String getKey( Element element );
+
+    public abstract void update( V value, String childTag, IndentationCounter counter, Element element );
+
+    /**
+     * Joins key parts with ':', treating null as empty.
+     */
+    protected static String key( final String... parts )
+    {
+        final StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < parts.length; i++ )
+        {
+            if ( i > 0 )
+            {
+                sb.append( ':' );
+            }
+            if ( parts[i] != null )
+            {
+                sb.append( parts[i] );
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the trimmed text of the named child of <code>element</code>, or <code>defaultValue</code> when missing
+     */
+    protected static String childText( final Element element, final String name, final String defaultValue )
+    {
+        final String text = element.getChildTextTrim( name, element.getNamespace() );
+        return text == null ? defaultValue : text;
+    }
+
+}
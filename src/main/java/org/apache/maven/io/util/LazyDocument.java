@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+
+/**
+ * A document of which only the root element and the start tags of its children are parsed up front. Each child of the
+ * root starts out as an empty placeholder with the name and attributes of the original element; its content is parsed
+ * from the source text by {@link #expand(Element)} once an update descends into it. Placeholders keep their
+ * identity when expanded, and the document stays bound to its source text for {@link SpliceOutput}, which copies
+ * sections that were never expanded as they are.
+ */
+final class LazyDocument
+{
+
+    /**
+     * Thrown from within an update pass when the content of a section turns out not to be well-formed; carries the
+     * exception a full parse would have thrown up front.
+     */
+    static final class ExpansionException
+        extends RuntimeException
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        ExpansionException( final JDOMException cause )
+        {
+            super( cause.getMessage(), cause );
+        }
+
+        JDOMException getJDOMException()
+        {
+            return (JDOMException) getCause();
+        }
+
+    }
+
+    private final SourceMap source;
+
+    private final Document document;
+
+    private final SAXBuilder builder;
+
+    private final String systemId;
+
+    private final Map<Element, Integer> indexes;
+
+    private final Map<Element, Integer> placeholders = new IdentityHashMap<Element, Integer>();
+
+    private boolean bound = true;
+
+    private LazyDocument( final SourceMap source, final Document document, final SAXBuilder builder,
+                          final String systemId, final Map<Element, Integer> indexes )
+    {
+        this.source = source;
+        this.document = document;
+        this.builder = builder;
+        this.systemId = systemId;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Parses the skeleton of the document in <code>original</code>.
+     *
+     * @param encoding the encoding the output will be written in; as sections are copied from the source, it has to
+     *            be the source's
+     * @return null if the document cannot be parsed lazily (eg. because it declares a document type), in which case it
+     *         has to be parsed in full
+     */
+    static LazyDocument parse( final byte[] original, final String systemId, final SAXBuilder builder,
+                               final String encoding )
+        throws IOException, JDOMException
+    {
+        final String text = SpliceOutput.decode( original, encoding );
+        final SourceMap map = text == null ? null : SourceMap.scan( text );
+        if ( map == null || map.isEmptyElementTag( 0 ) || text.lastIndexOf( "<!DOCTYPE", map.getStart( 0 ) ) >= 0 )
+        {
+            return null;
+        }
+
+        final List<Integer> sections = new ArrayList<Integer>();
+        final StringBuilder skeleton = new StringBuilder( text.length() / 4 );
+        // a byte order mark is not content to a parser reading characters; the splice output copies it from the text.
+        int position = text.startsWith( "\uFEFF" ) ? 1 : 0;
+        for ( int index = 1; index < map.size() && map.getStart( index ) < map.getEnd( 0 ); index =
+            map.skip( index ) )
+        {
+            sections.add( index );
+            skeleton.append( text, position, map.getStartEnd( index ) - 1 );
+            if ( !map.isEmptyElementTag( index ) )
+            {
+                skeleton.append( '/' );
+            }
+            skeleton.append( '>' );
+            position = map.getEnd( index );
+        }
+        skeleton.append( text, position, text.length() );
+
+        final Document document = builder.build( new StringReader( skeleton.toString() ), systemId );
+        final Element root = document.getRootElement();
+        final List<Element> children = root.getChildren();
+        if ( document.getDocType() != null || children.size() != sections.size()
+            || !map.getName( 0 ).equals( root.getQualifiedName() ) )
+        {
+            return null;
+        }
+
+        final Map<Element, Integer> indexes = new IdentityHashMap<Element, Integer>( map.size() * 2 );
+        indexes.put( root, 0 );
+        final LazyDocument lazy = new LazyDocument( map, document, builder, systemId, indexes );
+        for ( int i = 0; i < children.size(); i++ )
+        {
+            final Element child = children.get( i );
+            final int index = sections.get( i );
+            if ( !map.getName( index ).equals( child.getQualifiedName() ) )
+            {
+                return null;
+            }
+            indexes.put( child, index );
+            if ( !map.isEmptyElementTag( index ) )
+            {
+                lazy.placeholders.put( child, index );
+            }
+        }
+        return lazy;
+    }
+
+    Document getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * @return the splice output for the document; sections expanded later are bound to their source as they are
+     */
+    SpliceOutput createSpliceOutput()
+    {
+        return new SpliceOutput( source, indexes, document );
+    }
+
+    /**
+     * @return false if an expanded section did not match its source, in which case the document has to be written in
+     *         full
+     */
+    boolean isSpliceable()
+    {
+        return bound;
+    }
+
+    /**
+     * Parses the content of <code>element</code> if it is a placeholder that was not expanded yet.
+     */
+    void expand( final Element element )
+    {
+        final Integer index = placeholders.remove( element );
+        if ( index != null )
+        {
+            expand( element, index );
+        }
+    }
+
+    void expandAll()
+    {
+        for ( final Element placeholder : new ArrayList<Element>( placeholders.keySet() ) )
+        {
+            expand( placeholder, placeholders.remove( placeholder ) );
+        }
+    }
+
+    private void expand( final Element placeholder, final int index )
+    {
+        final String text = source.getText();
+
+        // the root start tag keeps the namespace declarations in scope.
+        final StringBuilder fragment = new StringBuilder( source.getEnd( index ) - source.getStart( index ) + 64 );
+        fragment.append( text, source.getStart( 0 ), source.getStartEnd( 0 ) );
+        fragment.append( text, source.getStart( index ), source.getEnd( index ) );
+        fragment.append( "</" ).append( source.getName( 0 ) ).append( '>' );
+
+        final Element parsed;
+        try
+        {
+            final Document wrapper = builder.build( new StringReader( fragment.toString() ), systemId );
+            parsed = wrapper.getRootElement().getChildren().get( 0 );
+        }
+        catch ( final JDOMException e )
+        {
+            throw new ExpansionException( e );
+        }
+        catch ( final IOException e )
+        {
+            throw new ExpansionException( new JDOMException( e.getMessage(), e ) );
+        }
+        placeholder.addContent( parsed.removeContent() );
+
+        if ( source.bind( placeholder, index, indexes ) != source.skip( index ) )
+        {
+            bound = false;
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Deep comparison and fingerprinting of model objects. Model classes either lack <code>equals</code> or compare only their key in it (eg.
+ * plugins by group and artifact id), so they are compared field by field. JDK types and
+ * {@link org.codehaus.plexus.util.xml.Xpp3Dom} are compared with <code>equals</code>, and lists and maps entry by
+ * entry. Input location fields are left out, as they are not written.
+ */
+public final class ModelEquality
+{
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final ConcurrentMap<Class<?>, Field[]> FIELDS = new ConcurrentHashMap<Class<?>, Field[]>();
+
+    private ModelEquality()
+    {
+    }
+
+    public static boolean equal( final Object a, final Object b )
+    {
+        if ( a == b )
+        {
+            return true;
+        }
+        if ( a == null || b == null || a.getClass() != b.getClass() )
+        {
+            return false;
+        }
+
+        if ( a instanceof List )
+        {
+            return equalLists( (List<?>) a, (List<?>) b );
+        }
+        if ( a instanceof Map )
+        {
+            return equalMaps( (Map<?, ?>) a, (Map<?, ?>) b );
+        }
+        if ( a.getClass().isArray() )
+        {
+            return Arrays.deepEquals( new Object[] { a }, new Object[] { b } );
+        }
+        if ( a.getClass().getName().startsWith( "java." ) || a instanceof Enum || a instanceof Xpp3Dom )
+        {
+            return a.equals( b );
+        }
+
+        try
+        {
+            for ( final Field field : fields( a.getClass() ) )
+            {
+                if ( !equal( field.get( a ), field.get( b ) ) )
+                {
+                    return false;
+                }
+            }
+        }
+        catch ( final IllegalAccessException e )
+        {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A 64 bit hash of the content of <code>value</code>, equal for all objects that are {@link #equal(Object, Object)}.
+     */
+    public static long fingerprint( final Object value )
+    {
+        if ( value == null )
+        {
+            return 0;
+        }
+        if ( value instanceof String )
+        {
+            return fingerprint( (String) value );
+        }
+        if ( value instanceof List )
+        {
+            long hash = FNV_OFFSET;
+            for ( final Object item : (List<?>) value )
+            {
+                hash = mix( hash, fingerprint( item ) );
+            }
+            return hash;
+        }
+        if ( value instanceof Map )
+        {
+            // independent of the iteration order.
+            long hash = 0;
+            for ( final Map.Entry<?, ?> entry : ( (Map<?, ?>) value ).entrySet() )
+            {
+                hash += mix( fingerprint( entry.getKey() ), fingerprint( entry.getValue() ) );
+            }
+            return hash;
+        }
+        if ( value instanceof Xpp3Dom )
+        {
+            final Xpp3Dom dom = (Xpp3Dom) value;
+            long hash = mix( fingerprint( dom.getName() ), fingerprint( dom.getValue() ) );
+            long attributes = 0;
+            for ( final String name : dom.getAttributeNames() )
+            {
+                attributes += mix( fingerprint( name ), fingerprint( dom.getAttribute( name ) ) );
+            }
+            hash = mix( hash, attributes );
+            for ( final Xpp3Dom child : dom.getChildren() )
+            {
+                hash = mix( hash, fingerprint( child ) );
+            }
+            return hash;
+        }
+        if ( value.getClass().isArray() )
+        {
+            return Arrays.deepHashCode( new Object[] { value } );
+        }
+        if ( value.getClass().getName().startsWith( "java." ) )
+        {
+            return value.hashCode();
+        }
+        if ( value instanceof Enum )
+        {
+            return fingerprint( ( (Enum<?>) value ).name() );
+        }
+
+        long hash = fingerprint( value.getClass().getName() );
+        try
+        {
+            for ( final Field field : fields( value.getClass() ) )
+            {
+                hash = mix( hash, fingerprint( field.get( value ) ) );
+            }
+        }
+        catch ( final IllegalAccessException e )
+        {
+            return System.identityHashCode( value );
+        }
+        return hash;
+    }
+
+    static long fingerprint( final String value )
+    {
+        if ( value == null )
+        {
+            return 0;
+        }
+        long hash = FNV_OFFSET;
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            hash = ( hash ^ value.charAt( i ) ) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    static long mix( final long hash, final long value )
+    {
+        return ( hash ^ value ) * FNV_PRIME + ( value >>> 29 );
+    }
+
+    private static boolean equalLists( final List<?> a, final List<?> b )
+    {
+        if ( a.size() != b.size() )
+        {
+            return false;
+        }
+        final Iterator<?> ia = a.iterator();
+        final Iterator<?> ib = b.iterator();
+        while ( ia.hasNext() )
+        {
+            if ( !equal( ia.next(), ib.next() ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalMaps( final Map<?, ?> a, final Map<?, ?> b )
+    {
+        if ( a.size() != b.size() )
+        {
+            return false;
+        }
+        for ( final Map.Entry<?, ?> entry : a.entrySet() )
+        {
+            if ( !b.containsKey( entry.getKey() ) || !equal( entry.getValue(), b.get( entry.getKey() ) ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Field[] fields( final Class<?> type )
+    {
+        Field[] result = FIELDS.get( type );
+        if ( result == null )
+        {
+            final List<Field> fields = new ArrayList<Field>();
+            for ( Class<?> current = type; current != null && current != Object.class; current =
+                current.getSuperclass() )
+            {
+                for ( final Field field : current.getDeclaredFields() )
+                {
+                    final int modifiers = field.getModifiers();
+                    if ( Modifier.isStatic( modifiers ) || Modifier.isTransient( modifiers )
+                        || field.getName().startsWith( "location" ) )
+                    {
+                        continue;
+                    }
+                    field.setAccessible( true );
+                    fields.add( field );
+                }
+            }
+            result = fields.toArray( new Field[fields.size()] );
+            FIELDS.put( type, result );
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import org.jdom2.input.SAXBuilder;
+
+/**
+ * Creates the builders a {@link SAXBuilderPool} hands out, eg. ones that do not load external DTDs:
+ *
+ * <pre>
+ * public SAXBuilder newBuilder()
+ * {
+ *     final SAXBuilder builder = new SAXBuilder();
+ *     builder.setFeature( &quot;http://apache.org/xml/features/nonvalidating/load-external-dtd&quot;, false );
+ *     return builder;
+ * }
+ * </pre>
+ */
+public interface SAXBuilderFactory
+{
+
+    /**
+     * @return a new builder; it is used by one thread at a time, but by different threads over its life
+     */
+    SAXBuilder newBuilder();
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.jdom2.input.SAXBuilder;
+
+/**
+ * The builders the writers parse files with. A builder keeps its SAX parser between documents, so reusing it saves
+ * looking up and configuring a parser for each file. A builder is taken out of the pool for the time of one write and
+ * used by that thread alone; when the pool is empty a new one is created, and when it is full a returned one is
+ * dropped. The pool is thread safe and may be shared by any number of writers; by default all writers share
+ * {@link #getDefault()}.
+ */
+public final class SAXBuilderPool
+{
+
+    public static final int DEFAULT_SIZE = Math.max( 4, Runtime.getRuntime().availableProcessors() );
+
+    private static final SAXBuilderFactory DEFAULT_FACTORY = new SAXBuilderFactory()
+    {
+        public SAXBuilder newBuilder()
+        {
+            return new SAXBuilder();
+        }
+    };
+
+    private static final SAXBuilderPool DEFAULT = new SAXBuilderPool( DEFAULT_FACTORY, DEFAULT_SIZE );
+
+    private final SAXBuilderFactory factory;
+
+    private final BlockingQueue<SAXBuilder> idle;
+
+    public SAXBuilderPool( final int size )
+    {
+        this( DEFAULT_FACTORY, size );
+    }
+
+    /**
+     * @param size the number of idle builders kept for reuse; 0 creates a builder for each write
+     */
+    public SAXBuilderPool( final SAXBuilderFactory factory, final int size )
+    {
+        if ( factory == null )
+        {
+            throw new IllegalArgumentException( "factory is null" );
+        }
+        if ( size < 0 )
+        {
+            throw new IllegalArgumentException( "size < 0: " + size );
+        }
+        this.factory = factory;
+        this.idle = size == 0 ? null : new ArrayBlockingQueue<SAXBuilder>( size );
+    }
+
+    /**
+     * @return the pool of plain {@link SAXBuilder}s shared by writers that were not given one
+     */
+    public static SAXBuilderPool getDefault()
+    {
+        return DEFAULT;
+    }
+
+    public int getSize()
+    {
+        return idle == null ? 0 : idle.size() + idle.remainingCapacity();
+    }
+
+    /**
+     * @return a builder for the calling thread to use until it passes it to {@link #release(SAXBuilder)}
+     */
+    SAXBuilder acquire()
+    {
+        final SAXBuilder builder = idle == null ? null : idle.poll();
+        return builder != null ? builder : factory.newBuilder();
+    }
+
+    void release( final SAXBuilder builder )
+    {
+        if ( idle != null && builder != null )
+        {
+            idle.offer( builder );
+        }
+    }
+
+}
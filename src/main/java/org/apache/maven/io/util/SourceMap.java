@@ -0,0 +1,466 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+
+/**
+ * Positions of the elements of an XML document in its source text, in document order. Each element has the range of
+ * its start tag and of its end tag; for empty-element tags (<code>&lt;a/&gt;</code>) both are the same range.
+ * <p>
+ * The scanner only knows as much XML as it needs to find tags: comments, CDATA sections, processing instructions,
+ * the document type declaration and quoted attribute values. It does not validate; {@link #bind(Document)} checks the
+ * result against the parsed document instead.
+ */
+final class SourceMap
+{
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final String text;
+
+    private int count;
+
+    private int[] starts = new int[INITIAL_CAPACITY];
+
+    private int[] startEnds = new int[INITIAL_CAPACITY];
+
+    private int[] endStarts = new int[INITIAL_CAPACITY];
+
+    private int[] ends = new int[INITIAL_CAPACITY];
+
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    private SourceMap( final String text )
+    {
+        this.text = text;
+    }
+
+    /**
+     * @return the element positions of <code>text</code>, or null if it is not well-formed enough to find them
+     */
+    static SourceMap scan( final String text )
+    {
+        final SourceMap map = new SourceMap( text );
+        return map.scan() ? map : null;
+    }
+
+    String getText()
+    {
+        return text;
+    }
+
+    int size()
+    {
+        return count;
+    }
+
+    /**
+     * Start of the start tag, ie. the index of its '&lt;'.
+     */
+    int getStart( final int index )
+    {
+        return starts[index];
+    }
+
+    /**
+     * End of the start tag, ie. the index after its '&gt;'.
+     */
+    int getStartEnd( final int index )
+    {
+        return startEnds[index];
+    }
+
+    /**
+     * Start of the end tag; the same as {@link #getStartEnd(int)} for an empty-element tag.
+     */
+    int getEndStart( final int index )
+    {
+        return endStarts[index];
+    }
+
+    /**
+     * End of the element, ie. the index after the '&gt;' of its end tag.
+     */
+    int getEnd( final int index )
+    {
+        return ends[index];
+    }
+
+    boolean isEmptyElementTag( final int index )
+    {
+        return startEnds[index] == ends[index];
+    }
+
+    /**
+     * The qualified name in the start tag.
+     */
+    String getName( final int index )
+    {
+        return names[index];
+    }
+
+    /**
+     * @return the index of the first element after the one at <code>index</code> and its descendants
+     */
+    int skip( final int index )
+    {
+        int next = index + 1;
+        while ( next < count && starts[next] < ends[index] )
+        {
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * Pairs the scanned elements with those of <code>document</code>, which must have been parsed from the same text
+     * and not modified since.
+     *
+     * @return the index of each element of the document, or null if the document does not match the scan (eg.
+     *         because entity declarations added elements)
+     */
+    Map<Element, Integer> bind( final Document document )
+    {
+        if ( !document.hasRootElement() )
+        {
+            return null;
+        }
+        final Map<Element, Integer> indexes = new IdentityHashMap<Element, Integer>( count * 2 );
+        final int bound = bind( document.getRootElement(), 0, indexes );
+        return bound == count ? indexes : null;
+    }
+
+    /**
+     * Pairs <code>element</code> and its descendants with the scanned elements from <code>index</code> on.
+     *
+     * @return the index after the last one bound, or -1 if they do not match
+     */
+    int bind( final Element element, final int index, final Map<Element, Integer> indexes )
+    {
+        if ( index < 0 || index >= count || !names[index].equals( element.getQualifiedName() ) )
+        {
+            return -1;
+        }
+        indexes.put( element, index );
+
+        int next = index + 1;
+        final List<Element> children = element.getChildren();
+        for ( int i = 0; i < children.size() && next >= 0; i++ )
+        {
+            next = bind( children.get( i ), next, indexes );
+        }
+        return next;
+    }
+
+    /**
+     * @return the line separator used by the first line break of the text, or null if there is none
+     */
+    String detectLineSeparator()
+    {
+        final int index = text.indexOf( '\n' );
+        if ( index < 0 )
+        {
+            return null;
+        }
+        return index > 0 && text.charAt( index - 1 ) == '\r' ? "\r\n" : "\n";
+    }
+
+    /**
+     * @return the line separator used by the first line break in <code>bytes</code>, which hold the start of a
+     *         document in an ASCII compatible encoding, or null if there is none
+     */
+    static String detectLineSeparator( final byte[] bytes )
+    {
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            if ( bytes[i] == '\n' )
+            {
+                return i > 0 && bytes[i - 1] == '\r' ? "\r\n" : "\n";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines the encoding of an XML document from its byte order mark or XML declaration.
+     *
+     * @return the encoding name, or null when it cannot be determined from ASCII-compatible bytes
+     */
+    static String detectEncoding( final byte[] bytes )
+    {
+        if ( bytes.length >= 3 && ( bytes[0] & 0xFF ) == 0xEF && ( bytes[1] & 0xFF ) == 0xBB
+            && ( bytes[2] & 0xFF ) == 0xBF )
+        {
+            return "UTF-8";
+        }
+        if ( bytes.length >= 2 && ( ( bytes[0] == 0 ) || ( bytes[1] == 0 ) || ( bytes[0] & 0xFF ) == 0xFE
+            || ( bytes[0] & 0xFF ) == 0xFF ) )
+        {
+            // UTF-16 or UTF-32 in some form.
+            return null;
+        }
+        if ( !startsWith( bytes, "<?xml" ) )
+        {
+            return "UTF-8";
+        }
+
+        final StringBuilder declaration = new StringBuilder();
+        for ( int i = 0; i < bytes.length && bytes[i] != '>'; i++ )
+        {
+            declaration.append( (char) ( bytes[i] & 0xFF ) );
+        }
+        final int attr = declaration.indexOf( "encoding" );
+        if ( attr < 0 )
+        {
+            return "UTF-8";
+        }
+        int i = attr + "encoding".length();
+        while ( i < declaration.length()
+            && ( declaration.charAt( i ) == '=' || isWhitespace( declaration.charAt( i ) ) ) )
+        {
+            i++;
+        }
+        if ( i >= declaration.length() )
+        {
+            return null;
+        }
+        final char quote = declaration.charAt( i );
+        final int end = declaration.indexOf( String.valueOf( quote ), i + 1 );
+        if ( ( quote != '"' && quote != '\'' ) || end < 0 )
+        {
+            return null;
+        }
+        return declaration.substring( i + 1, end );
+    }
+
+    private static boolean startsWith( final byte[] bytes, final String prefix )
+    {
+        if ( bytes.length < prefix.length() )
+        {
+            return false;
+        }
+        for ( int i = 0; i < prefix.length(); i++ )
+        {
+            if ( bytes[i] != prefix.charAt( i ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean scan()
+    {
+        final int length = text.length();
+        int[] open = new int[INITIAL_CAPACITY];
+        int depth = 0;
+
+        int i = text.indexOf( '<' );
+        while ( i >= 0 )
+        {
+            if ( text.startsWith( "<!--", i ) )
+            {
+                i = skipPast( "-->", i + 4 );
+            }
+            else if ( text.startsWith( "<![CDATA[", i ) )
+            {
+                i = skipPast( "]]>", i + 9 );
+            }
+            else if ( text.startsWith( "<?", i ) )
+            {
+                i = skipPast( "?>", i + 2 );
+            }
+            else if ( text.startsWith( "<!", i ) )
+            {
+                i = skipDeclaration( i + 2 );
+            }
+            else if ( text.startsWith( "</", i ) )
+            {
+                final int close = text.indexOf( '>', i + 2 );
+                if ( depth == 0 || close < 0 )
+                {
+                    return false;
+                }
+                final int index = open[--depth];
+                if ( !names[index].equals( text.substring( i + 2, close ).trim() ) )
+                {
+                    return false;
+                }
+                endStarts[index] = i;
+                ends[index] = close + 1;
+                i = close + 1;
+            }
+            else
+            {
+                final int close = skipTag( i + 1 );
+                if ( close < 0 )
+                {
+                    return false;
+                }
+                int nameEnd = i + 1;
+                while ( nameEnd < close && !isWhitespace( text.charAt( nameEnd ) ) && text.charAt( nameEnd ) != '/'
+                    && text.charAt( nameEnd ) != '>' )
+                {
+                    nameEnd++;
+                }
+
+                final int index = add( i, close, text.substring( i + 1, nameEnd ) );
+                if ( text.charAt( close - 2 ) == '/' )
+                {
+                    endStarts[index] = close;
+                    ends[index] = close;
+                }
+                else
+                {
+                    if ( depth == open.length )
+                    {
+                        final int[] grown = new int[depth * 2];
+                        System.arraycopy( open, 0, grown, 0, depth );
+                        open = grown;
+                    }
+                    open[depth++] = index;
+                }
+                i = close;
+            }
+
+            if ( i < 0 || i > length )
+            {
+                return false;
+            }
+            i = text.indexOf( '<', i );
+        }
+        return depth == 0 && count > 0;
+    }
+
+    private int add( final int start, final int startEnd, final String name )
+    {
+        if ( count == starts.length )
+        {
+            final int size = count * 2;
+            starts = grow( starts, size );
+            startEnds = grow( startEnds, size );
+            endStarts = grow( endStarts, size );
+            ends = grow( ends, size );
+            final String[] grownNames = new String[size];
+            System.arraycopy( names, 0, grownNames, 0, count );
+            names = grownNames;
+        }
+        starts[count] = start;
+        startEnds[count] = startEnd;
+        names[count] = name;
+        return count++;
+    }
+
+    private static int[] grow( final int[] array, final int size )
+    {
+        final int[] grown = new int[size];
+        System.arraycopy( array, 0, grown, 0, array.length );
+        return grown;
+    }
+
+    private int skipPast( final String terminator, final int from )
+    {
+        final int index = text.indexOf( terminator, from );
+        return index < 0 ? -1 : index + terminator.length();
+    }
+
+    /**
+     * @return the index after the '&gt;' closing the tag whose name starts at <code>from</code>, minding quoted
+     *         attribute values
+     */
+    private int skipTag( final int from )
+    {
+        char quote = 0;
+        for ( int i = from; i < text.length(); i++ )
+        {
+            final char c = text.charAt( i );
+            if ( quote != 0 )
+            {
+                if ( c == quote )
+                {
+                    quote = 0;
+                }
+            }
+            else if ( c == '"' || c == '\'' )
+            {
+                quote = c;
+            }
+            else if ( c == '>' )
+            {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips a markup declaration such as <code>&lt;!DOCTYPE ... [ ... ]&gt;</code>, including an internal subset.
+     */
+    private int skipDeclaration( final int from )
+    {
+        char quote = 0;
+        int brackets = 0;
+        for ( int i = from; i < text.length(); i++ )
+        {
+            final char c = text.charAt( i );
+            if ( quote != 0 )
+            {
+                if ( c == quote )
+                {
+                    quote = 0;
+                }
+            }
+            else if ( c == '"' || c == '\'' )
+            {
+                quote = c;
+            }
+            else if ( c == '[' )
+            {
+                brackets++;
+            }
+            else if ( c == ']' )
+            {
+                brackets--;
+            }
+            else if ( c == '<' && text.startsWith( "<!--", i ) )
+            {
+                final int end = text.indexOf( "-->", i + 4 );
+                if ( end < 0 )
+                {
+                    return -1;
+                }
+                i = end + 2;
+            }
+            else if ( c == '>' && brackets == 0 )
+            {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace( final char c )
+    {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+}
@@ -0,0 +1,384 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.output.Format;
+import org.jdom2.output.support.FormatStack;
+import org.jdom2.util.NamespaceStack;
+
+/**
+ * Writes an updated document as a copy of its source text in which only the content of modified elements is
+ * serialized again. Untouched elements, and the tags of modified ones, keep their original characters - attribute
+ * quoting, empty-element tags, line separators and all.
+ * <p>
+ * The result is a list of {@link Segment}s, each either a range of the source or new text, in output order. Ranges are
+ * increasing, so whatever lies between two of them in the source was replaced by the text in between.
+ */
+final class SpliceOutput
+{
+
+    /**
+     * A piece of output: either the source range [start, end) or, when <code>text</code> is not null, new text.
+     */
+    static final class Segment
+    {
+
+        final int start;
+
+        final int end;
+
+        final String text;
+
+        Segment( final int start, final int end, final String text )
+        {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+    }
+
+    private final SourceMap source;
+
+    private final Map<Element, Integer> indexes;
+
+    private final Document document;
+
+    private final DocumentOutputProcessor processor = new DocumentOutputProcessor();
+
+    private List<Segment> segments;
+
+    private Set<Element> dirty;
+
+    private Map<Element, Boolean> onPath;
+
+    private FormatStack fstack;
+
+    private int copyStart = -1;
+
+    private int copyEnd;
+
+    private int lastEnd;
+
+    private boolean ordered;
+
+    private StringWriter pending;
+
+    SpliceOutput( final SourceMap source, final Map<Element, Integer> indexes, final Document document )
+    {
+        this.source = source;
+        this.indexes = indexes;
+        this.document = document;
+    }
+
+    /**
+     * Maps <code>document</code>, freshly parsed from <code>original</code>, to its source text. This has to happen
+     * before the document is updated.
+     *
+     * @param encoding the encoding the output will be written in; splicing requires it to be the source's
+     * @return null if the document cannot be spliced, in which case it has to be written in full
+     */
+    static SpliceOutput prepare( final byte[] original, final Document document, final String encoding )
+    {
+        final String text = decode( original, encoding );
+        final SourceMap map = text == null ? null : SourceMap.scan( text );
+        if ( map == null )
+        {
+            return null;
+        }
+        final Map<Element, Integer> indexes = map.bind( document );
+        if ( indexes == null )
+        {
+            return null;
+        }
+        return new SpliceOutput( map, indexes, document );
+    }
+
+    /**
+     * @return the text of <code>original</code>, or null if it is not in <code>encoding</code> or that cannot be told
+     */
+    static String decode( final byte[] original, final String encoding )
+    {
+        final String sourceEncoding = SourceMap.detectEncoding( original );
+        if ( sourceEncoding == null || encoding == null )
+        {
+            return null;
+        }
+
+        final Charset charset;
+        try
+        {
+            charset = Charset.forName( sourceEncoding );
+            if ( !charset.equals( Charset.forName( encoding ) ) )
+            {
+                return null;
+            }
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            return null;
+        }
+        return new String( original, charset );
+    }
+
+    /**
+     * Computes the output for the changes recorded by <code>context</code>.
+     *
+     * @param format the format for serializing new content; its line separator is replaced by the one of the source
+     * @return false if the changes cannot be spliced into the source, in which case it has to be written in full
+     */
+    boolean render( final UpdateContext context, final Format format )
+        throws IOException
+    {
+        dirty = context.getDirtyElements();
+        onPath = new IdentityHashMap<Element, Boolean>();
+        for ( final Element element : dirty )
+        {
+            Element current = element;
+            while ( current != null && !onPath.containsKey( current ) )
+            {
+                onPath.put( current, Boolean.TRUE );
+                current = current.getParentElement();
+            }
+        }
+
+        final Format pieceFormat = format.clone();
+        final String lineSeparator = source.detectLineSeparator();
+        if ( lineSeparator != null )
+        {
+            pieceFormat.setLineSeparator( lineSeparator );
+        }
+        fstack = new FormatStack( pieceFormat );
+
+        segments = new ArrayList<Segment>();
+        copyStart = -1;
+        lastEnd = 0;
+        ordered = true;
+        pending = null;
+
+        final Element root = document.getRootElement();
+        final Integer index = indexes.get( root );
+        if ( index == null )
+        {
+            return false;
+        }
+        copy( 0, source.getStart( index ) );
+        if ( !renderElement( root, index ) )
+        {
+            return false;
+        }
+        copy( source.getEnd( index ), source.getText().length() );
+        flushCopy();
+        flushText();
+        return ordered;
+    }
+
+    /**
+     * @return the segments computed by the last successful {@link #render(UpdateContext, Format)}
+     */
+    List<Segment> getSegments()
+    {
+        return segments;
+    }
+
+    String getSourceText()
+    {
+        return source.getText();
+    }
+
+    void writeTo( final Writer out )
+        throws IOException
+    {
+        final String text = source.getText();
+        for ( final Segment segment : segments )
+        {
+            if ( segment.text == null )
+            {
+                out.write( text, segment.start, segment.end - segment.start );
+            }
+            else
+            {
+                out.write( segment.text );
+            }
+        }
+    }
+
+    private boolean renderElement( final Element element, final int index )
+        throws IOException
+    {
+        if ( !onPath.containsKey( element ) )
+        {
+            copy( source.getStart( index ), source.getEnd( index ) );
+            return true;
+        }
+
+        if ( !dirty.contains( element ) )
+        {
+            // the content list is the original one; only descendants changed.
+            int position = source.getStart( index );
+            for ( final Element child : element.getChildren() )
+            {
+                final Integer childIndex = indexes.get( child );
+                if ( childIndex == null )
+                {
+                    return false;
+                }
+                copy( position, source.getStart( childIndex ) );
+                if ( !renderElement( child, childIndex ) )
+                {
+                    return false;
+                }
+                position = source.getEnd( childIndex );
+            }
+            copy( position, source.getEnd( index ) );
+            return true;
+        }
+
+        final boolean emptyTag = source.isEmptyElementTag( index );
+        if ( emptyTag && element.getContentSize() == 0 )
+        {
+            copy( source.getStart( index ), source.getEnd( index ) );
+            return true;
+        }
+
+        if ( emptyTag )
+        {
+            // drop the "/>" of the original tag.
+            copy( source.getStart( index ), source.getStartEnd( index ) - 2 );
+            text().write( '>' );
+        }
+        else
+        {
+            copy( source.getStart( index ), source.getStartEnd( index ) );
+        }
+
+        NamespaceStack nstack = null;
+        for ( final Content content : element.getContent() )
+        {
+            final Integer childIndex = content instanceof Element ? indexes.get( content ) : null;
+            if ( childIndex != null )
+            {
+                if ( !renderElement( (Element) content, childIndex ) )
+                {
+                    return false;
+                }
+            }
+            else
+            {
+                if ( nstack == null )
+                {
+                    nstack = namespacesInScope( element );
+                }
+                processor.printContent( text(), fstack, nstack, content );
+            }
+        }
+
+        if ( emptyTag )
+        {
+            text().write( "</" + element.getQualifiedName() + ">" );
+        }
+        else
+        {
+            copy( source.getEndStart( index ), source.getEnd( index ) );
+        }
+        return true;
+    }
+
+    private static NamespaceStack namespacesInScope( final Element element )
+    {
+        final LinkedList<Element> ancestors = new LinkedList<Element>();
+        for ( Element current = element; current != null; current = current.getParentElement() )
+        {
+            ancestors.addFirst( current );
+        }
+
+        final NamespaceStack nstack = new NamespaceStack();
+        for ( final Element ancestor : ancestors )
+        {
+            nstack.push( ancestor );
+        }
+        return nstack;
+    }
+
+    private void copy( final int start, final int end )
+    {
+        if ( start == end )
+        {
+            return;
+        }
+        flushText();
+        if ( copyStart >= 0 && start == copyEnd )
+        {
+            copyEnd = end;
+            return;
+        }
+        flushCopy();
+        if ( start < lastEnd || end < start )
+        {
+            ordered = false;
+        }
+        copyStart = start;
+        copyEnd = end;
+        lastEnd = end;
+    }
+
+    private Writer text()
+    {
+        flushCopy();
+        if ( pending == null )
+        {
+            pending = new StringWriter();
+        }
+        return pending;
+    }
+
+    private void flushCopy()
+    {
+        if ( copyStart >= 0 )
+        {
+            segments.add( new Segment( copyStart, copyEnd, null ) );
+            lastEnd = copyEnd;
+            copyStart = -1;
+        }
+    }
+
+    private void flushText()
+    {
+        if ( pending != null )
+        {
+            if ( pending.getBuffer().length() > 0 )
+            {
+                segments.add( new Segment( -1, -1, pending.toString() ) );
+            }
+            pending = null;
+        }
+    }
+
+}
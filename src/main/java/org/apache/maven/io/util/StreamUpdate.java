@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import static org.apache.maven.io.util.WriterUtils.findAndReplaceSimpleElement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Element;
+
+/**
+ * The edits a streaming update makes to the children of one element, described up front from the model and applied
+ * by {@link AbstractJDOMWriter#writeStreaming(Object, java.io.File)} while the document streams by. There is one rule
+ * per child name, in model order; children without a rule are copied unchanged.
+ * <p>
+ * Children handled by {@link #child(String, boolean)}, {@link #list(String, String, Collection, ItemUpdater)} and
+ * {@link #textList(String, String, Collection)} are streamed themselves, so their size does not matter. Those handled
+ * by {@link #section(String, Section)} and {@link #text(String, String, String)}, and each list entry, are read into a
+ * JDOM element and updated by the regular update code, one at a time. Children the document lacks are appended at the
+ * end of their parent.
+ */
+public final class StreamUpdate
+{
+
+    /**
+     * Updates one child of an element, given a stand-in for that element which holds no other children. Matches the
+     * generated <code>updateXxx( value, xmlTag, counter, parent )</code> methods.
+     */
+    public abstract static class Section
+    {
+
+        /**
+         * @param counter the counter for the child's level
+         * @param parent the stand-in parent; the child, if the document has it, is its only content
+         */
+        public abstract void update( IndentationCounter counter, Element parent );
+
+    }
+
+    /**
+     * Updates one entry of a list. Matches the generated <code>updateXxx( value, xmlTag, counter, element )</code>
+     * methods for list entries.
+     */
+    public abstract static class ItemUpdater<V>
+    {
+
+        public abstract void update( V value, String xmlTag, IndentationCounter counter, Element element );
+
+    }
+
+    static final int SECTION = 0;
+
+    static final int CHILD = 1;
+
+    static final int LIST = 2;
+
+    static final int TEXT_LIST = 3;
+
+    /**
+     * One rule; which fields are set depends on the kind.
+     */
+    static final class Rule
+    {
+
+        final int kind;
+
+        final int index;
+
+        final String name;
+
+        Section section;
+
+        StreamUpdate nested;
+
+        boolean shouldExist;
+
+        String childName;
+
+        Collection<?> values;
+
+        ItemUpdater<Object> updater;
+
+        Rule( final int kind, final int index, final String name )
+        {
+            this.kind = kind;
+            this.index = index;
+            this.name = name;
+        }
+
+    }
+
+    private final List<Rule> rules = new ArrayList<Rule>();
+
+    private final Map<String, Rule> byName = new HashMap<String, Rule>();
+
+    /**
+     * The stream counterpart of {@link WriterUtils#findAndReplaceSimpleElement(IndentationCounter, Element, String,
+     * String, String)}.
+     */
+    public StreamUpdate text( final String name, final String text, final String defaultValue )
+    {
+        return section( name, new Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                findAndReplaceSimpleElement( counter, parent, name, text, defaultValue );
+            }
+        } );
+    }
+
+    /**
+     * Updates the child <code>name</code> through <code>section</code>, which also decides whether it should exist.
+     */
+    public StreamUpdate section( final String name, final Section section )
+    {
+        add( SECTION, name ).section = section;
+        return this;
+    }
+
+    /**
+     * Streams the child <code>name</code>, or removes it when it should not exist.
+     *
+     * @return the rules for the child's own children
+     */
+    public StreamUpdate child( final String name, final boolean shouldExist )
+    {
+        final Rule rule = add( CHILD, name );
+        rule.shouldExist = shouldExist;
+        rule.nested = new StreamUpdate();
+        return rule.nested;
+    }
+
+    /**
+     * The stream counterpart of {@link WriterUtils#findAndReplaceSimpleLists(IndentationCounter, Element,
+     * Collection, String, String)}.
+     */
+    public StreamUpdate textList( final String parentName, final String childName, final Collection<String> values )
+    {
+        final Rule rule = add( TEXT_LIST, parentName );
+        rule.childName = childName;
+        rule.values = values;
+        return this;
+    }
+
+    /**
+     * Streams the list <code>parentName</code>, pairing its <code>childName</code> children with
+     * <code>values</code> by position like the generated <code>iterateXxx</code> methods: each pair is updated by
+     * <code>updater</code>, surplus children are removed and surplus values appended. The list is removed when
+     * <code>values</code> is empty.
+     */
+    @SuppressWarnings( "unchecked" )
+    public <V> StreamUpdate list( final String parentName, final String childName, final Collection<V> values,
+                                  final ItemUpdater<V> updater )
+    {
+        final Rule rule = add( LIST, parentName );
+        rule.childName = childName;
+        rule.values = values;
+        rule.updater = (ItemUpdater<Object>) updater;
+        return this;
+    }
+
+    List<Rule> getRules()
+    {
+        return rules;
+    }
+
+    Rule getRule( final String name )
+    {
+        return byName.get( name );
+    }
+
+    private Rule add( final int kind, final String name )
+    {
+        final Rule rule = new Rule( kind, rules.size(), name );
+        rules.add( rule );
+        if ( !byName.containsKey( name ) )
+        {
+            byName.put( name, rule );
+        }
+        return rule;
+    }
+
+}
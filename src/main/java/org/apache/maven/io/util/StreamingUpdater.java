@@ -0,0 +1,1097 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.COMMENT;
+import static javax.xml.stream.XMLStreamConstants.DTD;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.ENTITY_REFERENCE;
+import static javax.xml.stream.XMLStreamConstants.PROCESSING_INSTRUCTION;
+import static javax.xml.stream.XMLStreamConstants.SPACE;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.maven.io.util.StreamUpdate.Rule;
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.EntityRef;
+import org.jdom2.JDOMFactory;
+import org.jdom2.Namespace;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.Text;
+import org.jdom2.UncheckedJDOMFactory;
+import org.jdom2.output.Format;
+
+/**
+ * Applies a {@link StreamUpdate} while copying a document from a StAX reader to a StAX writer. Only the elements on
+ * the current path, the in-scope namespace declarations and one section or list entry at a time are held in memory.
+ * <p>
+ * Copied markup is serialized again by the writer, so the output is equivalent to, not a byte copy of, the input: like
+ * the JDOM output, attributes end up double-quoted and empty elements expanded. Line breaks are written as '\n',
+ * which the output of {@link #newOutput(Writer, String)} translates to the line separator of the document.
+ */
+final class StreamingUpdater
+{
+
+    private static final String LINE_BREAK = "\n";
+
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    /**
+     * The position of an element in the output, for reporting changes. Paths are only resolved once the document is
+     * complete, when it is known whether an element has siblings of the same name.
+     */
+    private static final class Node
+    {
+
+        final Node parent;
+
+        final String name;
+
+        final int ordinal;
+
+        final boolean removed;
+
+        final String localName;
+
+        final Namespace namespace;
+
+        private Map<String, int[]> sourceCounts;
+
+        private Map<String, int[]> outputCounts;
+
+        Node( final Node parent, final String name, final int ordinal, final boolean removed,
+              final String localName, final Namespace namespace )
+        {
+            this.parent = parent;
+            this.name = name;
+            this.ordinal = ordinal;
+            this.removed = removed;
+            this.localName = localName;
+            this.namespace = namespace;
+        }
+
+        void countSource( final String childName )
+        {
+            sourceCounts = increment( sourceCounts, childName );
+        }
+
+        int countOutput( final String childName )
+        {
+            outputCounts = increment( outputCounts, childName );
+            return outputCounts.get( childName )[0];
+        }
+
+        int getSourceCount( final String childName )
+        {
+            return count( sourceCounts, childName );
+        }
+
+        String getPath()
+        {
+            if ( parent == null )
+            {
+                return "/" + name;
+            }
+            final int count =
+                removed ? count( parent.sourceCounts, name ) : count( parent.outputCounts, name );
+            return parent.getPath() + "/" + ( count > 1 ? name + "[" + ordinal + "]" : name );
+        }
+
+        private static Map<String, int[]> increment( final Map<String, int[]> counts, final String childName )
+        {
+            final Map<String, int[]> result = counts == null ? new HashMap<String, int[]>( 8 ) : counts;
+            final int[] count = result.get( childName );
+            if ( count == null )
+            {
+                result.put( childName, new int[] { 1 } );
+            }
+            else
+            {
+                count[0]++;
+            }
+            return result;
+        }
+
+        private static int count( final Map<String, int[]> counts, final String childName )
+        {
+            final int[] count = counts == null ? null : counts.get( childName );
+            return count == null ? 0 : count[0];
+        }
+
+    }
+
+    private static final class Change
+    {
+
+        final Node node;
+
+        final String suffix;
+
+        Change( final Node node, final String suffix )
+        {
+            this.node = node;
+            this.suffix = suffix;
+        }
+
+    }
+
+    private final JDOMFactory factory = new UncheckedJDOMFactory();
+
+    private final IndentationCounter textCounter = new IndentationCounter( 0 );
+
+    private final XMLStreamReader in;
+
+    private final XMLStreamWriter out;
+
+    private final Format format;
+
+    private final String indentUnit;
+
+    private Indentation indentation;
+
+    /**
+     * Namespace declarations of the streamed elements that are currently open, outermost first.
+     */
+    private final List<Namespace> scope = new ArrayList<Namespace>();
+
+    private final List<Change> created = new ArrayList<Change>();
+
+    private final List<Change> removed = new ArrayList<Change>();
+
+    private final List<Change> changed = new ArrayList<Change>();
+
+    /**
+     * @param indentUnit the indent unit for inserted elements, or null to detect it from the document
+     */
+    StreamingUpdater( final XMLStreamReader in, final XMLStreamWriter out, final Format format,
+                      final String indentUnit )
+    {
+        this.in = in;
+        this.out = out;
+        this.format = format;
+        this.indentUnit = indentUnit;
+    }
+
+    static XMLInputFactory newInputFactory()
+    {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.FALSE );
+        if ( factory.isPropertySupported( REPORT_CDATA ) )
+        {
+            factory.setProperty( REPORT_CDATA, Boolean.TRUE );
+        }
+        return factory;
+    }
+
+    /**
+     * @return a writer to <code>writer</code> that writes line breaks - which come out of the reader as '\n' - as
+     *         <code>lineSeparator</code>
+     */
+    static XMLStreamWriter newOutput( final Writer writer, final String lineSeparator )
+        throws XMLStreamException
+    {
+        final Writer target =
+            lineSeparator == null || "\n".equals( lineSeparator ) ? writer
+                            : new LineSeparatorWriter( writer, lineSeparator );
+        return XMLOutputFactory.newInstance().createXMLStreamWriter( target );
+    }
+
+    ChangeSet update( final StreamUpdate rules )
+        throws XMLStreamException
+    {
+        if ( !format.getOmitDeclaration() )
+        {
+            final String version = in.getVersion() == null ? "1.0" : in.getVersion();
+            if ( format.getOmitEncoding() )
+            {
+                out.writeStartDocument( version );
+            }
+            else
+            {
+                out.writeStartDocument( format.getEncoding(), version );
+            }
+            write( LINE_BREAK );
+        }
+
+        boolean afterRoot = false;
+        while ( in.hasNext() )
+        {
+            final int event = in.next();
+            if ( event == START_ELEMENT )
+            {
+                final Namespace namespace = namespace( in.getPrefix(), in.getNamespaceURI() );
+                streamElement( rules, new Node( null, qualifiedName(), 1, false, in.getLocalName(), namespace ), 0 );
+                afterRoot = true;
+            }
+            else if ( event == COMMENT || event == PROCESSING_INSTRUCTION || event == DTD )
+            {
+                if ( afterRoot )
+                {
+                    write( LINE_BREAK );
+                    afterRoot = false;
+                }
+                copyEvent( event );
+                write( LINE_BREAK );
+            }
+        }
+        write( LINE_BREAK );
+        out.writeEndDocument();
+        out.flush();
+
+        return ChangeSet.fromPaths( paths( created ), paths( removed ), paths( changed ) );
+    }
+
+    /**
+     * Streams the element at the reader's position, applying <code>rules</code> to its children.
+     */
+    private void streamElement( final StreamUpdate rules, final Node node, final int depth )
+        throws XMLStreamException
+    {
+        copyStartTag();
+        final int scopeSize = pushScope();
+        final boolean[] seen = new boolean[rules.getRules().size()];
+        final StringBuilder space = new StringBuilder();
+        String childIndent = null;
+        boolean empty = true;
+        while ( true )
+        {
+            final int event = in.next();
+            if ( event == START_ELEMENT )
+            {
+                final String indent = space.toString();
+                space.setLength( 0 );
+                if ( depth == 0 && indentation == null )
+                {
+                    detectIndentation( indent );
+                }
+                if ( indent.length() > 0 )
+                {
+                    childIndent = indent;
+                }
+                empty = false;
+
+                final String name = qualifiedName();
+                node.countSource( name );
+                final Rule rule = sameNamespace( node ) ? rules.getRule( in.getLocalName() ) : null;
+                if ( rule == null || seen[rule.index] )
+                {
+                    write( indent );
+                    node.countOutput( name );
+                    copyElement();
+                }
+                else
+                {
+                    seen[rule.index] = true;
+                    updateChild( rule, node, depth + 1, indent );
+                }
+            }
+            else if ( event == END_ELEMENT )
+            {
+                final String indent = childIndent == null ? indentation().get( depth + 1 ) : childIndent;
+                final boolean inserted = appendMissing( rules, seen, node, depth + 1, indent, true );
+                close( space.toString(), inserted && empty, depth );
+                popScope( scopeSize );
+                return;
+            }
+            else if ( isWhitespace( event ) )
+            {
+                space.append( in.getText() );
+            }
+            else
+            {
+                write( space.toString() );
+                space.setLength( 0 );
+                copyEvent( event );
+                empty = false;
+            }
+        }
+    }
+
+    /**
+     * Streams a list element at the reader's position, pairing its entries with the values of <code>rule</code>.
+     */
+    private void streamList( final Rule rule, final Node node, final int depth )
+        throws XMLStreamException
+    {
+        copyStartTag();
+        final int scopeSize = pushScope();
+        final Iterator<?> values = rule.values.iterator();
+        final StringBuilder space = new StringBuilder();
+        String childIndent = null;
+        boolean empty = true;
+        while ( true )
+        {
+            final int event = in.next();
+            if ( event == START_ELEMENT )
+            {
+                final String indent = space.toString();
+                space.setLength( 0 );
+                if ( indent.length() > 0 )
+                {
+                    childIndent = indent;
+                }
+                empty = false;
+
+                final String name = qualifiedName();
+                node.countSource( name );
+                if ( sameNamespace( node ) && in.getLocalName().equals( rule.childName ) )
+                {
+                    if ( values.hasNext() )
+                    {
+                        updateItem( rule, node, values.next(), readElement(), depth + 1, indent, true );
+                    }
+                    else
+                    {
+                        skipElement();
+                        removed.add( new Change( new Node( node, name, node.getSourceCount( name ), true, null,
+                                                           null ), "" ) );
+                    }
+                }
+                else
+                {
+                    write( indent );
+                    node.countOutput( name );
+                    copyElement();
+                }
+            }
+            else if ( event == END_ELEMENT )
+            {
+                final String indent = childIndent == null ? indentation().get( depth + 1 ) : childIndent;
+                boolean inserted = false;
+                while ( values.hasNext() )
+                {
+                    updateItem( rule, node, values.next(), null, depth + 1, indent, true );
+                    inserted = true;
+                }
+                close( space.toString(), inserted && empty, depth );
+                popScope( scopeSize );
+                return;
+            }
+            else if ( isWhitespace( event ) )
+            {
+                space.append( in.getText() );
+            }
+            else
+            {
+                write( space.toString() );
+                space.setLength( 0 );
+                copyEvent( event );
+                empty = false;
+            }
+        }
+    }
+
+    /**
+     * Handles the child at the reader's position, which matched <code>rule</code>.
+     */
+    private void updateChild( final Rule rule, final Node parent, final int depth, final String indent )
+        throws XMLStreamException
+    {
+        final String name = qualifiedName();
+        if ( rule.kind == StreamUpdate.SECTION )
+        {
+            updateMaterialized( parent, rule, null, readElement(), depth, indent, true );
+            return;
+        }
+
+        final boolean shouldExist =
+            rule.kind == StreamUpdate.CHILD ? rule.shouldExist : rule.values != null && !rule.values.isEmpty();
+        if ( !shouldExist )
+        {
+            skipElement();
+            removed.add( new Change( new Node( parent, name, parent.getSourceCount( name ), true, null, null ), "" ) );
+            return;
+        }
+
+        write( indent );
+        final Node node =
+            new Node( parent, name, parent.countOutput( name ), false, in.getLocalName(),
+                      namespace( in.getPrefix(), in.getNamespaceURI() ) );
+        if ( rule.kind == StreamUpdate.CHILD )
+        {
+            streamElement( rule.nested, node, depth );
+        }
+        else
+        {
+            streamList( rule, node, depth );
+        }
+    }
+
+    /**
+     * Writes the children for the rules that did not match an existing child.
+     *
+     * @param seen the rules that did match, or null if the parent is new
+     * @param depth the depth of the children
+     * @param record whether to report the new children; false inside a new parent, which is reported itself
+     * @return true if anything was written
+     */
+    private boolean appendMissing( final StreamUpdate rules, final boolean[] seen, final Node parent,
+                                   final int depth, final String indent, final boolean record )
+        throws XMLStreamException
+    {
+        boolean inserted = false;
+        for ( final Rule rule : rules.getRules() )
+        {
+            if ( ( seen != null && seen[rule.index] ) || rules.getRule( rule.name ) != rule )
+            {
+                continue;
+            }
+
+            if ( rule.kind == StreamUpdate.SECTION )
+            {
+                inserted |= updateMaterialized( parent, rule, null, null, depth, indent, record );
+                continue;
+            }
+
+            final boolean shouldExist =
+                rule.kind == StreamUpdate.CHILD ? rule.shouldExist : rule.values != null && !rule.values.isEmpty();
+            if ( !shouldExist )
+            {
+                continue;
+            }
+
+            write( indent );
+            final String name = qualifiedName( parent.namespace, rule.name );
+            final Node node = new Node( parent, name, parent.countOutput( name ), false, rule.name, parent.namespace );
+            if ( record )
+            {
+                created.add( new Change( node, "" ) );
+            }
+            writeStartTag( parent.namespace, rule.name );
+            boolean filled = false;
+            if ( rule.kind == StreamUpdate.CHILD )
+            {
+                filled = appendMissing( rule.nested, null, node, depth + 1, indentation().get( depth + 1 ), false );
+            }
+            else
+            {
+                for ( final Object value : rule.values )
+                {
+                    updateItem( rule, node, value, null, depth + 1, indentation().get( depth + 1 ), false );
+                }
+                filled = true;
+            }
+            if ( filled )
+            {
+                write( indentation().get( depth ) );
+            }
+            out.writeEndElement();
+            inserted = true;
+        }
+        return inserted;
+    }
+
+    private void updateItem( final Rule rule, final Node parent, final Object value, final Element child,
+                             final int depth, final String indent, final boolean record )
+        throws XMLStreamException
+    {
+        if ( rule.kind == StreamUpdate.LIST )
+        {
+            updateMaterialized( parent, rule, value, child, depth, indent, record );
+            return;
+        }
+
+        Element element = child;
+        if ( element == null )
+        {
+            element = factory.element( rule.childName, parent.namespace );
+        }
+        final boolean modified = WriterUtils.updateText( textCounter, element, (String) value );
+
+        write( indent );
+        final String name = element.getQualifiedName();
+        final Node node = new Node( parent, name, parent.countOutput( name ), false, null, null );
+        if ( record && child == null )
+        {
+            created.add( new Change( node, "" ) );
+        }
+        else if ( record && modified )
+        {
+            changed.add( new Change( node, "" ) );
+        }
+        emit( element );
+    }
+
+    /**
+     * Updates a section or list entry in memory: <code>child</code>, the existing element or null, is placed in a
+     * stand-in for the parent, passed to the section or entry update, and whatever the stand-in holds afterwards is
+     * written in its place. The stand-in is the root of a scratch document, so the changes can be reported relative to
+     * it.
+     *
+     * @return true if an element was written
+     */
+    private boolean updateMaterialized( final Node parent, final Rule rule, final Object value, final Element child,
+                                        final int depth, final String indent, final boolean record )
+        throws XMLStreamException
+    {
+        final Element shell = factory.element( parent.localName, parent.namespace );
+        for ( int i = scope.size() - 1; i >= 0; i-- )
+        {
+            final Namespace namespace = scope.get( i );
+            if ( namespace.getPrefix().length() > 0 && shell.getNamespace( namespace.getPrefix() ) == null )
+            {
+                shell.addNamespaceDeclaration( namespace );
+            }
+        }
+        new Document( shell );
+        if ( child != null )
+        {
+            shell.addContent( child );
+        }
+
+        final UpdateContext context = new UpdateContext( indentation() );
+        final IndentationCounter counter = context.enterLevel( depth );
+        if ( rule.kind == StreamUpdate.SECTION )
+        {
+            rule.section.update( counter, shell );
+        }
+        else
+        {
+            Element element = child;
+            if ( element == null )
+            {
+                element = factory.element( rule.childName, parent.namespace );
+                shell.addContent( element );
+                context.childAdded( shell, element );
+            }
+            rule.updater.update( value, rule.childName, counter, element );
+        }
+
+        Node node = null;
+        for ( final Element element : shell.getChildren() )
+        {
+            write( indent );
+            final String name = element.getQualifiedName();
+            node = new Node( parent, name, parent.countOutput( name ), false, null, null );
+            emit( element );
+        }
+        if ( node == null && child != null )
+        {
+            final String name = child.getQualifiedName();
+            node = new Node( parent, name, parent.getSourceCount( name ), true, null, null );
+        }
+
+        if ( record && node != null && context.isModified() )
+        {
+            final ChangeSet changes = context.getChangeSet();
+            final int prefix = shell.getQualifiedName().length() + 2;
+            for ( final String path : changes.getCreated() )
+            {
+                created.add( new Change( node, suffix( path, prefix ) ) );
+            }
+            for ( final String path : changes.getRemoved() )
+            {
+                removed.add( new Change( node, suffix( path, prefix ) ) );
+            }
+            for ( final String path : changes.getChanged() )
+            {
+                changed.add( new Change( node, suffix( path, prefix ) ) );
+            }
+        }
+        return node != null && !node.removed;
+    }
+
+    /**
+     * @return the part of a path in the scratch document below its first step under the stand-in root
+     */
+    private static String suffix( final String path, final int prefix )
+    {
+        final int next = path.indexOf( '/', prefix );
+        return next < 0 ? "" : path.substring( next );
+    }
+
+    /**
+     * Reads the element at the reader's position into a JDOM element.
+     */
+    private Element readElement()
+        throws XMLStreamException
+    {
+        final Namespace namespace = namespace( in.getPrefix(), in.getNamespaceURI() );
+        final Element element = factory.element( in.getLocalName(), namespace );
+        for ( int i = 0; i < in.getNamespaceCount(); i++ )
+        {
+            final Namespace declared = namespace( in.getNamespacePrefix( i ), in.getNamespaceURI( i ) );
+            if ( !declared.getPrefix().equals( namespace.getPrefix() ) )
+            {
+                element.addNamespaceDeclaration( declared );
+            }
+        }
+        for ( int i = 0; i < in.getAttributeCount(); i++ )
+        {
+            final String uri = in.getAttributeNamespace( i );
+            final Namespace attributeNamespace =
+                uri == null || uri.length() == 0 ? Namespace.NO_NAMESPACE : namespace( in.getAttributePrefix( i ),
+                                                                                      uri );
+            element.setAttribute( factory.attribute( in.getAttributeLocalName( i ), in.getAttributeValue( i ),
+                                                     attributeNamespace ) );
+        }
+
+        while ( true )
+        {
+            final int event = in.next();
+            switch ( event )
+            {
+                case START_ELEMENT:
+                    element.addContent( readElement() );
+                    break;
+                case END_ELEMENT:
+                    return element;
+                case CHARACTERS:
+                case SPACE:
+                    final int size = element.getContentSize();
+                    final Content last = size == 0 ? null : element.getContent( size - 1 );
+                    if ( last != null && last.getCType() == Content.CType.Text )
+                    {
+                        ( (Text) last ).append( in.getText() );
+                    }
+                    else
+                    {
+                        element.addContent( factory.text( in.getText() ) );
+                    }
+                    break;
+                case CDATA:
+                    element.addContent( factory.cdata( in.getText() ) );
+                    break;
+                case COMMENT:
+                    element.addContent( factory.comment( in.getText() ) );
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    element.addContent( factory.processingInstruction( in.getPITarget(),
+                                                                       in.getPIData() == null ? "" : in.getPIData() ) );
+                    break;
+                case ENTITY_REFERENCE:
+                    element.addContent( factory.entityRef( in.getLocalName() ) );
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Writes a JDOM element, declaring the namespaces it uses that are not in scope yet.
+     */
+    private void emit( final Element element )
+        throws XMLStreamException
+    {
+        // the writer takes the prefix of a start tag as bound, so what is in scope is checked before writing it.
+        final Namespace namespace = element.getNamespace();
+        final boolean declareNamespace = !isBound( namespace );
+        writeStartTag( namespace, element.getName() );
+        if ( declareNamespace )
+        {
+            declare( namespace );
+        }
+        for ( final Namespace additional : element.getAdditionalNamespaces() )
+        {
+            if ( !additional.getPrefix().equals( namespace.getPrefix() ) && !isBound( additional ) )
+            {
+                declare( additional );
+            }
+        }
+        if ( element.hasAttributes() )
+        {
+            for ( final Attribute attribute : element.getAttributes() )
+            {
+                final Namespace attributeNamespace = attribute.getNamespace();
+                if ( attributeNamespace.getURI().length() == 0 )
+                {
+                    out.writeAttribute( attribute.getName(), attribute.getValue() );
+                }
+                else
+                {
+                    if ( !attributeNamespace.getPrefix().equals( namespace.getPrefix() )
+                        && !isBound( attributeNamespace ) )
+                    {
+                        declare( attributeNamespace );
+                    }
+                    out.writeAttribute( attributeNamespace.getPrefix(), attributeNamespace.getURI(),
+                                        attribute.getName(), attribute.getValue() );
+                }
+            }
+        }
+
+        for ( final Content content : element.getContent() )
+        {
+            switch ( content.getCType() )
+            {
+                case Element:
+                    emit( (Element) content );
+                    break;
+                case Text:
+                    out.writeCharacters( ( (Text) content ).getText() );
+                    break;
+                case CDATA:
+                    out.writeCData( ( (Text) content ).getText() );
+                    break;
+                case Comment:
+                    out.writeComment( content.getValue() );
+                    break;
+                case ProcessingInstruction:
+                    final ProcessingInstruction pi = (ProcessingInstruction) content;
+                    out.writeProcessingInstruction( pi.getTarget(), pi.getData() );
+                    break;
+                case EntityRef:
+                    out.writeEntityRef( ( (EntityRef) content ).getName() );
+                    break;
+                default:
+                    break;
+            }
+        }
+        out.writeEndElement();
+    }
+
+    private boolean isBound( final Namespace namespace )
+    {
+        final String prefix = namespace.getPrefix();
+        if ( "xml".equals( prefix ) )
+        {
+            return true;
+        }
+        final String bound = out.getNamespaceContext().getNamespaceURI( prefix );
+        return namespace.getURI().equals( bound == null ? "" : bound );
+    }
+
+    private void declare( final Namespace namespace )
+        throws XMLStreamException
+    {
+        if ( namespace.getPrefix().length() == 0 )
+        {
+            out.writeDefaultNamespace( namespace.getURI() );
+        }
+        else
+        {
+            out.writeNamespace( namespace.getPrefix(), namespace.getURI() );
+        }
+    }
+
+    private void writeStartTag( final Namespace namespace, final String name )
+        throws XMLStreamException
+    {
+        if ( namespace.getURI().length() == 0 )
+        {
+            out.writeStartElement( name );
+        }
+        else
+        {
+            out.writeStartElement( namespace.getPrefix(), name, namespace.getURI() );
+        }
+    }
+
+    /**
+     * Copies the start tag at the reader's position, with its namespace declarations and attributes.
+     */
+    private void copyStartTag()
+        throws XMLStreamException
+    {
+        writeStartTag( namespace( in.getPrefix(), in.getNamespaceURI() ), in.getLocalName() );
+        for ( int i = 0; i < in.getNamespaceCount(); i++ )
+        {
+            final String prefix = in.getNamespacePrefix( i );
+            if ( prefix == null || prefix.length() == 0 )
+            {
+                out.writeDefaultNamespace( in.getNamespaceURI( i ) );
+            }
+            else
+            {
+                out.writeNamespace( prefix, in.getNamespaceURI( i ) );
+            }
+        }
+        for ( int i = 0; i < in.getAttributeCount(); i++ )
+        {
+            final String uri = in.getAttributeNamespace( i );
+            if ( uri == null || uri.length() == 0 )
+            {
+                out.writeAttribute( in.getAttributeLocalName( i ), in.getAttributeValue( i ) );
+            }
+            else
+            {
+                out.writeAttribute( in.getAttributePrefix( i ), uri, in.getAttributeLocalName( i ),
+                                    in.getAttributeValue( i ) );
+            }
+        }
+    }
+
+    /**
+     * Copies the element at the reader's position unchanged.
+     */
+    private void copyElement()
+        throws XMLStreamException
+    {
+        copyStartTag();
+        int level = 1;
+        while ( level > 0 )
+        {
+            final int event = in.next();
+            if ( event == START_ELEMENT )
+            {
+                copyStartTag();
+                level++;
+            }
+            else if ( event == END_ELEMENT )
+            {
+                out.writeEndElement();
+                level--;
+            }
+            else
+            {
+                copyEvent( event );
+            }
+        }
+    }
+
+    private void skipElement()
+        throws XMLStreamException
+    {
+        int level = 1;
+        while ( level > 0 )
+        {
+            final int event = in.next();
+            if ( event == START_ELEMENT )
+            {
+                level++;
+            }
+            else if ( event == END_ELEMENT )
+            {
+                level--;
+            }
+        }
+    }
+
+    private void copyEvent( final int event )
+        throws XMLStreamException
+    {
+        switch ( event )
+        {
+            case CHARACTERS:
+            case SPACE:
+                out.writeCharacters( in.getTextCharacters(), in.getTextStart(), in.getTextLength() );
+                break;
+            case CDATA:
+                out.writeCData( in.getText() );
+                break;
+            case COMMENT:
+                out.writeComment( in.getText() );
+                break;
+            case PROCESSING_INSTRUCTION:
+                if ( in.getPIData() == null )
+                {
+                    out.writeProcessingInstruction( in.getPITarget() );
+                }
+                else
+                {
+                    out.writeProcessingInstruction( in.getPITarget(), in.getPIData() );
+                }
+                break;
+            case ENTITY_REFERENCE:
+                out.writeEntityRef( in.getLocalName() );
+                break;
+            case DTD:
+                out.writeDTD( in.getText() );
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Writes the whitespace in front of an end tag, and the end tag.
+     *
+     * @param indentParent true if children were inserted into an element that had none, so it needs closing
+     *            whitespace of its own
+     */
+    private void close( final String space, final boolean indentParent, final int depth )
+        throws XMLStreamException
+    {
+        if ( indentParent && space.length() == 0 )
+        {
+            write( indentation().get( depth ) );
+        }
+        else
+        {
+            write( space );
+        }
+        out.writeEndElement();
+    }
+
+    private void write( final String text )
+        throws XMLStreamException
+    {
+        if ( text != null && text.length() > 0 )
+        {
+            out.writeCharacters( text );
+        }
+    }
+
+    private int pushScope()
+    {
+        final int size = scope.size();
+        for ( int i = 0; i < in.getNamespaceCount(); i++ )
+        {
+            scope.add( namespace( in.getNamespacePrefix( i ), in.getNamespaceURI( i ) ) );
+        }
+        return size;
+    }
+
+    private void popScope( final int size )
+    {
+        while ( scope.size() > size )
+        {
+            scope.remove( scope.size() - 1 );
+        }
+    }
+
+    private boolean sameNamespace( final Node parent )
+    {
+        final String uri = in.getNamespaceURI();
+        return parent.namespace.getURI().equals( uri == null ? "" : uri );
+    }
+
+    private void detectIndentation( final String space )
+    {
+        String unit = indentUnit;
+        final int lineStart = space.lastIndexOf( '\n' );
+        if ( unit == null && lineStart > -1 && lineStart < space.length() - 1 )
+        {
+            unit = space.substring( lineStart + 1 );
+        }
+        indentation = new Indentation( unit == null ? Indentation.DEFAULT_UNIT : unit );
+    }
+
+    private Indentation indentation()
+    {
+        if ( indentation == null )
+        {
+            detectIndentation( "" );
+        }
+        return indentation;
+    }
+
+    private boolean isWhitespace( final int event )
+    {
+        return event == SPACE || ( event == CHARACTERS && in.isWhiteSpace() );
+    }
+
+    private String qualifiedName()
+    {
+        final String prefix = in.getPrefix();
+        return prefix == null || prefix.length() == 0 ? in.getLocalName() : prefix + ":" + in.getLocalName();
+    }
+
+    private static String qualifiedName( final Namespace namespace, final String name )
+    {
+        return namespace.getPrefix().length() == 0 ? name : namespace.getPrefix() + ":" + name;
+    }
+
+    private static Namespace namespace( final String prefix, final String uri )
+    {
+        return Namespace.getNamespace( prefix == null ? "" : prefix, uri == null ? "" : uri );
+    }
+
+    private static List<String> paths( final List<Change> changes )
+    {
+        final List<String> paths = new ArrayList<String>( changes.size() );
+        for ( final Change change : changes )
+        {
+            paths.add( change.node.getPath() + change.suffix );
+        }
+        return paths;
+    }
+
+    private static final class LineSeparatorWriter
+        extends FilterWriter
+    {
+
+        private final String lineSeparator;
+
+        LineSeparatorWriter( final Writer out, final String lineSeparator )
+        {
+            super( out );
+            this.lineSeparator = lineSeparator;
+        }
+
+        @Override
+        public void write( final int c )
+            throws IOException
+        {
+            if ( c == '\n' )
+            {
+                out.write( lineSeparator );
+            }
+            else
+            {
+                out.write( c );
+            }
+        }
+
+        @Override
+        public void write( final char[] cbuf, final int off, final int len )
+            throws IOException
+        {
+            final int end = off + len;
+            int start = off;
+            for ( int i = off; i < end; i++ )
+            {
+                if ( cbuf[i] == '\n' )
+                {
+                    out.write( cbuf, start, i - start );
+                    out.write( lineSeparator );
+                    start = i + 1;
+                }
+            }
+            out.write( cbuf, start, end - start );
+        }
+
+        @Override
+        public void write( final String str, final int off, final int len )
+            throws IOException
+        {
+            final int end = off + len;
+            int start = off;
+            for ( int i = off; i < end; i++ )
+            {
+                if ( str.charAt( i ) == '\n' )
+                {
+                    out.write( str, start, i - start );
+                    out.write( lineSeparator );
+                    start = i + 1;
+                }
+            }
+            out.write( str, start, end - start );
+        }
+
+    }
+
+}
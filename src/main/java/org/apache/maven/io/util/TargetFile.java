@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Output to a file that is either written in place or, when replaced, written to a temporary file next to it that is
+ * then renamed over it, so that readers see either the old or the new content. Use as
+ *
+ * <pre>
+ * final TargetFile out = new TargetFile( file, true, sync );
+ * try
+ * {
+ *     write( out.open() );
+ *     out.commit();
+ * }
+ * finally
+ * {
+ *     out.close();
+ * }
+ * </pre>
+ *
+ * Closing without committing leaves a replaced file as it was.
+ */
+final class TargetFile
+{
+
+    private final File target;
+
+    private final boolean replace;
+
+    private final boolean sync;
+
+    private File temp;
+
+    private FileOutputStream stream;
+
+    /**
+     * @param replace whether to write to a temporary file that replaces <code>target</code> on commit
+     * @param sync whether to force the content - and, when replacing, the directory entry - to the device on commit
+     */
+    TargetFile( final File target, final boolean replace, final boolean sync )
+    {
+        this.target = target;
+        this.replace = replace;
+        this.sync = sync;
+    }
+
+    OutputStream open()
+        throws IOException
+    {
+        File file = target;
+        if ( replace )
+        {
+            temp = File.createTempFile( target.getName(), ".tmp", target.getAbsoluteFile().getParentFile() );
+            file = temp;
+        }
+        stream = new FileOutputStream( file );
+        return stream;
+    }
+
+    void commit()
+        throws IOException
+    {
+        stream.flush();
+        if ( sync )
+        {
+            stream.getFD().sync();
+        }
+        stream.close();
+        stream = null;
+
+        if ( replace )
+        {
+            final Path from = temp.toPath();
+            final Path to = target.toPath();
+            copyPermissions( to, from );
+            try
+            {
+                Files.move( from, to, StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch ( final AtomicMoveNotSupportedException e )
+            {
+                Files.move( from, to, StandardCopyOption.REPLACE_EXISTING );
+            }
+            temp = null;
+
+            if ( sync )
+            {
+                syncDirectory( to.toAbsolutePath().getParent() );
+            }
+        }
+    }
+
+    /**
+     * Closes the output if it is still open and removes the temporary file if it was not committed.
+     */
+    void close()
+    {
+        IOUtil.close( stream );
+        stream = null;
+        if ( temp != null )
+        {
+            temp.delete();
+            temp = null;
+        }
+    }
+
+    private static void copyPermissions( final Path from, final Path to )
+    {
+        try
+        {
+            if ( Files.exists( from ) )
+            {
+                Files.setPosixFilePermissions( to, Files.getPosixFilePermissions( from ) );
+            }
+        }
+        catch ( final UnsupportedOperationException e )
+        {
+            // not a POSIX file system.
+        }
+        catch ( final IOException e )
+        {
+            // keep the default permissions.
+        }
+    }
+
+    private static void syncDirectory( final Path directory )
+    {
+        if ( directory == null )
+        {
+            return;
+        }
+        FileChannel channel = null;
+        try
+        {
+            channel = FileChannel.open( directory, StandardOpenOption.READ );
+            channel.force( true );
+        }
+        catch ( final IOException e )
+        {
+            // directories cannot be opened on some platforms (eg. Windows); the rename is as durable as they make it.
+        }
+        finally
+        {
+            if ( channel != null )
+            {
+                try
+                {
+                    channel.close();
+                }
+                catch ( final IOException e )
+                {
+                    // ignore
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,518 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The textual difference between a document and its updated version, as a list of {@link Edit}s against the original
+ * text. The edits are derived from what the update pass changed, not by comparing the two texts.
+ */
+public final class TextPatch
+{
+
+    private static final int DEFAULT_CONTEXT = 3;
+
+    /**
+     * Replaces <code>length</code> characters of the original text, starting at <code>offset</code>, by
+     * <code>replacement</code>. Offsets are in characters of the decoded original text.
+     */
+    public static final class Edit
+    {
+
+        private final int offset;
+
+        private final int length;
+
+        private final String replacement;
+
+        Edit( final int offset, final int length, final String replacement )
+        {
+            this.offset = offset;
+            this.length = length;
+            this.replacement = replacement;
+        }
+
+        public int getOffset()
+        {
+            return offset;
+        }
+
+        public int getLength()
+        {
+            return length;
+        }
+
+        public String getReplacement()
+        {
+            return replacement;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Edit[offset=" + offset + ", length=" + length + ", replacement=" + replacement + "]";
+        }
+
+    }
+
+    private final String original;
+
+    private final List<Edit> edits;
+
+    private final ChangeSet changes;
+
+    private int[] lineStarts;
+
+    private TextPatch( final String original, final List<Edit> edits, final ChangeSet changes )
+    {
+        this.original = original;
+        this.edits = Collections.unmodifiableList( edits );
+        this.changes = changes;
+    }
+
+    /**
+     * Builds the patch from the output of a {@link SpliceOutput}: whatever lies between two copied ranges of the
+     * source is replaced by the new text in between.
+     */
+    static TextPatch create( final String original, final List<SpliceOutput.Segment> segments,
+                             final ChangeSet changes )
+    {
+        final List<Edit> raw = new ArrayList<Edit>();
+        int position = 0;
+        StringBuilder replacement = null;
+        for ( final SpliceOutput.Segment segment : segments )
+        {
+            if ( segment.text != null )
+            {
+                if ( replacement == null )
+                {
+                    replacement = new StringBuilder();
+                }
+                replacement.append( segment.text );
+            }
+            else
+            {
+                if ( segment.start > position || replacement != null )
+                {
+                    raw.add( new Edit( position, segment.start - position,
+                                       replacement == null ? "" : replacement.toString() ) );
+                }
+                position = segment.end;
+                replacement = null;
+            }
+        }
+        if ( position < original.length() || replacement != null )
+        {
+            raw.add( new Edit( position, original.length() - position,
+                               replacement == null ? "" : replacement.toString() ) );
+        }
+        return new TextPatch( original, normalize( original, raw ), changes );
+    }
+
+    /**
+     * Builds the patch for a document that had to be serialized in full, as a single edit covering everything
+     * between the common start and end of the two texts.
+     */
+    static TextPatch replace( final String original, final String updated, final ChangeSet changes )
+    {
+        final List<Edit> raw = new ArrayList<Edit>( 1 );
+        raw.add( new Edit( 0, original.length(), updated ) );
+        return new TextPatch( original, normalize( original, raw ), changes );
+    }
+
+    /**
+     * @return the edits, in increasing and non-overlapping order of their offsets
+     */
+    public List<Edit> getEdits()
+    {
+        return edits;
+    }
+
+    public boolean isEmpty()
+    {
+        return edits.isEmpty();
+    }
+
+    /**
+     * @return the changes the update made to the document
+     */
+    public ChangeSet getChangeSet()
+    {
+        return changes;
+    }
+
+    public String getOriginal()
+    {
+        return original;
+    }
+
+    /**
+     * @return the updated text, ie. the original one with all edits applied
+     */
+    public String apply()
+    {
+        final StringBuilder result = new StringBuilder( original.length() + 256 );
+        int position = 0;
+        for ( final Edit edit : edits )
+        {
+            result.append( original, position, edit.offset ).append( edit.replacement );
+            position = edit.offset + edit.length;
+        }
+        return result.append( original, position, original.length() ).toString();
+    }
+
+    public String toUnifiedDiff( final String oldName, final String newName )
+    {
+        return toUnifiedDiff( oldName, newName, DEFAULT_CONTEXT );
+    }
+
+    /**
+     * Renders the edits as a unified diff, with <code>context</code> unchanged lines around each change. Edits that
+     * touch the same lines are shown as one change.
+     *
+     * @return the diff, or an empty string when there are no edits
+     */
+    public String toUnifiedDiff( final String oldName, final String newName, final int context )
+    {
+        if ( edits.isEmpty() )
+        {
+            return "";
+        }
+
+        final List<Block> blocks = blocks();
+        final StringBuilder out = new StringBuilder();
+        out.append( "--- " ).append( oldName ).append( '\n' );
+        out.append( "+++ " ).append( newName ).append( '\n' );
+
+        final int lineCount = lineStarts().length - ( endsWithLineStart() ? 1 : 0 );
+        int delta = 0;
+        int first = 0;
+        while ( first < blocks.size() )
+        {
+            int last = first;
+            while ( last + 1 < blocks.size()
+                && blocks.get( last + 1 ).startLine - blocks.get( last ).endLine() <= 2 * context )
+            {
+                last++;
+            }
+
+            final int hunkStart = Math.max( 0, blocks.get( first ).startLine - context );
+            final int hunkEnd = Math.min( lineCount, blocks.get( last ).endLine() + context );
+
+            final StringBuilder body = new StringBuilder();
+            int oldCount = 0;
+            int newCount = 0;
+            int line = hunkStart;
+            for ( int i = first; i <= last; i++ )
+            {
+                final Block block = blocks.get( i );
+                for ( ; line < block.startLine; line++ )
+                {
+                    appendLine( body, ' ', line( line ) );
+                    oldCount++;
+                    newCount++;
+                }
+                for ( final String removed : block.oldLines )
+                {
+                    appendLine( body, '-', removed );
+                }
+                for ( final String added : block.newLines )
+                {
+                    appendLine( body, '+', added );
+                }
+                oldCount += block.oldLines.size();
+                newCount += block.newLines.size();
+                line = block.endLine();
+            }
+            for ( ; line < hunkEnd; line++ )
+            {
+                appendLine( body, ' ', line( line ) );
+                oldCount++;
+                newCount++;
+            }
+
+            final int newStart = hunkStart + delta;
+            out.append( "@@ -" ).append( range( hunkStart, oldCount ) );
+            out.append( " +" ).append( range( newStart, newCount ) ).append( " @@\n" );
+            out.append( body );
+
+            for ( int i = first; i <= last; i++ )
+            {
+                delta += blocks.get( i ).newLines.size() - blocks.get( i ).oldLines.size();
+            }
+            first = last + 1;
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TextPatch" + edits;
+    }
+
+    /**
+     * A run of whole lines of the original, and what they become once the edits inside it are applied.
+     */
+    private static final class Block
+    {
+
+        int startLine;
+
+        List<String> oldLines;
+
+        List<String> newLines;
+
+        int endLine()
+        {
+            return startLine + oldLines.size();
+        }
+
+    }
+
+    private List<Block> blocks()
+    {
+        final List<Block> blocks = new ArrayList<Block>();
+        int regionStart = -1;
+        int regionEnd = -1;
+        int editedTo = 0;
+        StringBuilder edited = null;
+        for ( final Edit edit : edits )
+        {
+            final int start = lineStart( edit.offset );
+            if ( edited != null && start >= regionEnd )
+            {
+                blocks.add( block( regionStart, regionEnd, edited.append( original, editedTo, regionEnd ) ) );
+                edited = null;
+            }
+            if ( edited == null )
+            {
+                regionStart = start;
+                edited = new StringBuilder();
+                editedTo = start;
+            }
+
+            edited.append( original, editedTo, edit.offset ).append( edit.replacement );
+            editedTo = edit.offset + edit.length;
+            regionEnd = Math.max( regionEnd, isLineStart( editedTo ) ? editedTo : lineEnd( editedTo ) );
+            if ( regionEnd == editedTo && edited.length() > 0 && edited.charAt( edited.length() - 1 ) != '\n'
+                && regionEnd < original.length() )
+            {
+                // the new text does not end a line, so it runs into the next one.
+                regionEnd = lineEnd( regionEnd );
+            }
+        }
+        if ( edited != null )
+        {
+            blocks.add( block( regionStart, regionEnd, edited.append( original, editedTo, regionEnd ) ) );
+        }
+        return blocks;
+    }
+
+    private Block block( final int regionStart, final int regionEnd, final CharSequence edited )
+    {
+        final Block block = new Block();
+        block.startLine = lineIndex( regionStart );
+        block.oldLines = splitLines( original.substring( regionStart, regionEnd ) );
+        block.newLines = splitLines( edited.toString() );
+        return block;
+    }
+
+    private static List<String> splitLines( final String text )
+    {
+        final List<String> lines = new ArrayList<String>();
+        int start = 0;
+        while ( start < text.length() )
+        {
+            final int newline = text.indexOf( '\n', start );
+            final int end = newline < 0 ? text.length() : newline + 1;
+            lines.add( text.substring( start, end ) );
+            start = end;
+        }
+        return lines;
+    }
+
+    private static void appendLine( final StringBuilder out, final char marker, final String line )
+    {
+        out.append( marker ).append( line );
+        if ( !line.endsWith( "\n" ) )
+        {
+            out.append( "\n\\ No newline at end of file\n" );
+        }
+    }
+
+    private static String range( final int start, final int count )
+    {
+        // an empty range names the line before it.
+        return ( count == 0 ? start : start + 1 ) + "," + count;
+    }
+
+    private String line( final int index )
+    {
+        final int[] starts = lineStarts();
+        final int end = index + 1 < starts.length ? starts[index + 1] : original.length();
+        return original.substring( starts[index], end );
+    }
+
+    private int[] lineStarts()
+    {
+        if ( lineStarts == null )
+        {
+            int count = 1;
+            for ( int i = 0; i < original.length(); i++ )
+            {
+                if ( original.charAt( i ) == '\n' )
+                {
+                    count++;
+                }
+            }
+            lineStarts = new int[count];
+            int line = 1;
+            for ( int i = 0; i < original.length(); i++ )
+            {
+                if ( original.charAt( i ) == '\n' )
+                {
+                    lineStarts[line++] = i + 1;
+                }
+            }
+        }
+        return lineStarts;
+    }
+
+    private boolean endsWithLineStart()
+    {
+        final int[] starts = lineStarts();
+        return starts[starts.length - 1] == original.length();
+    }
+
+    private int lineIndex( final int position )
+    {
+        final int index = Arrays.binarySearch( lineStarts(), position );
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private int lineStart( final int position )
+    {
+        return lineStarts()[lineIndex( position )];
+    }
+
+    private boolean isLineStart( final int position )
+    {
+        return position == original.length() || Arrays.binarySearch( lineStarts(), position ) >= 0;
+    }
+
+    private int lineEnd( final int position )
+    {
+        final int newline = original.indexOf( '\n', position );
+        return newline < 0 ? original.length() : newline + 1;
+    }
+
+    /**
+     * Drops what an edit leaves as it was from both of its ends, and moves pure insertions and deletions to line
+     * boundaries where an equivalent edit exists there, so that the diff shows whole lines.
+     */
+    private static List<Edit> normalize( final String original, final List<Edit> raw )
+    {
+        final List<Edit> result = new ArrayList<Edit>( raw.size() );
+        int previousEnd = -1;
+        for ( int i = 0; i < raw.size(); i++ )
+        {
+            final Edit edit = raw.get( i );
+            final String replacement = edit.replacement;
+            final int end = edit.offset + edit.length;
+
+            int prefix = 0;
+            final int max = Math.min( edit.length, replacement.length() );
+            while ( prefix < max && original.charAt( edit.offset + prefix ) == replacement.charAt( prefix ) )
+            {
+                prefix++;
+            }
+            int suffix = 0;
+            while ( suffix < max - prefix
+                && original.charAt( end - 1 - suffix ) == replacement.charAt( replacement.length() - 1 - suffix ) )
+            {
+                suffix++;
+            }
+
+            final int offset = edit.offset + prefix;
+            final int length = edit.length - prefix - suffix;
+            final String text = replacement.substring( prefix, replacement.length() - suffix );
+            if ( length == 0 && text.length() == 0 )
+            {
+                continue;
+            }
+
+            final int nextStart = i + 1 < raw.size() ? raw.get( i + 1 ).offset : original.length() + 1;
+            final Edit trimmed = new Edit( offset, length, text );
+            final Edit aligned =
+                length == 0 || text.length() == 0 ? align( original, trimmed, previousEnd, nextStart ) : trimmed;
+            result.add( aligned );
+            previousEnd = aligned.offset + aligned.length;
+        }
+        return result;
+    }
+
+    /**
+     * Slides a pure insertion or deletion over equal characters until it starts and ends on a line boundary, staying
+     * between <code>previousEnd</code> (-1 for the first edit) and <code>nextStart</code>. The edit is returned as is if that is not possible.
+     */
+    private static Edit align( final String original, final Edit edit, final int previousEnd, final int nextStart )
+    {
+        final boolean insertion = edit.length == 0;
+        if ( isAligned( original, edit.offset, insertion ? edit.replacement : original.substring(
+            edit.offset, edit.offset + edit.length ) ) )
+        {
+            return edit;
+        }
+
+        int offset = edit.offset;
+        String moved = insertion ? edit.replacement : original.substring( offset, offset + edit.length );
+        while ( offset + Math.max( edit.length, 1 ) < nextStart && offset + edit.length < original.length()
+            && original.charAt( offset + edit.length ) == moved.charAt( 0 ) )
+        {
+            moved = moved.substring( 1 ) + original.charAt( offset + edit.length );
+            offset++;
+            if ( isAligned( original, offset, moved ) )
+            {
+                return new Edit( offset, edit.length, insertion ? moved : "" );
+            }
+        }
+
+        offset = edit.offset;
+        moved = insertion ? edit.replacement : original.substring( offset, offset + edit.length );
+        while ( offset > 0 && offset - ( insertion ? 1 : 0 ) > previousEnd
+            && original.charAt( offset - 1 ) == moved.charAt( moved.length() - 1 ) )
+        {
+            moved = original.charAt( offset - 1 ) + moved.substring( 0, moved.length() - 1 );
+            offset--;
+            if ( isAligned( original, offset, moved ) )
+            {
+                return new Edit( offset, edit.length, insertion ? moved : "" );
+            }
+        }
+        return edit;
+    }
+
+    private static boolean isAligned( final String original, final int offset, final String text )
+    {
+        return ( offset == 0 || original.charAt( offset - 1 ) == '\n' ) && text.endsWith( "\n" );
+    }
+
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+
+/**
+ * State shared by every {@link IndentationCounter} of a single update pass. It is created by
+ * {@link AbstractJDOMWriter} for each write and reached from {@link WriterUtils} through the counter, so the generated
+ * writers never have to handle it directly.
+ */
+public class UpdateContext
+{
+
+    /**
+     * Parents with fewer content nodes than this are scanned directly; building a map for them costs more than it saves.
+     */
+    private static final int INDEX_THRESHOLD = 16;
+
+    private final Map<Element, Map<String, Element>> childIndexes = new IdentityHashMap<Element, Map<String, Element>>();
+
+    private final Map<Element, Map<String, Namespace>> namespaces = new IdentityHashMap<Element, Map<String, Namespace>>();
+
+    private final Indentation indentation;
+
+    private final boolean track;
+
+    /**
+     * One reusable counter per depth, handed out by {@link #enterLevel(int)}.
+     */
+    private IndentationCounter[] frames = new IndentationCounter[16];
+
+    private int modificationCount;
+
+    private final List<Element> created = new ArrayList<Element>();
+
+    private final List<ChangeSet.Removal> removed = new ArrayList<ChangeSet.Removal>();
+
+    /**
+     * The children each parent had before the first removal from it, for resolving the paths of removed elements.
+     */
+    private final Map<Element, List<Element>> removalSiblings = new IdentityHashMap<Element, List<Element>>();
+
+    private final List<Element> changed = new ArrayList<Element>();
+
+    /**
+     * Elements whose own content list was changed in this pass.
+     */
+    private final Map<Element, Boolean> dirty = new IdentityHashMap<Element, Boolean>();
+
+    /**
+     * Set when the document outlives the pass, so that fingerprints recorded for it can pay off.
+     */
+    private Fingerprints fingerprints;
+
+    /**
+     * Set when the document was parsed lazily; sections are expanded as the update looks them up.
+     */
+    private LazyDocument lazyDocument;
+
+    public UpdateContext()
+    {
+        this( Indentation.DEFAULT );
+    }
+
+    public UpdateContext( final Indentation indentation )
+    {
+        this( indentation, true );
+    }
+
+    /**
+     * @param track whether to record the changes for {@link #getChangeSet()}; modifications are counted either way
+     */
+    public UpdateContext( final Indentation indentation, final boolean track )
+    {
+        this.indentation = indentation;
+        this.track = track;
+    }
+
+    /**
+     * @return the whitespace table used for elements inserted during this pass
+     */
+    public Indentation getIndentation()
+    {
+        return indentation;
+    }
+
+    /**
+     * Enters a nesting level: returns the counter frame for <code>depth</code>, reset for a new parent. Frames follow
+     * the recursive descent of the writers, so a frame is never in use by two parents at once; reusing them keeps the
+     * update pass free of per-node bookkeeping allocations.
+     */
+    public IndentationCounter enterLevel( final int depth )
+    {
+        if ( depth >= frames.length )
+        {
+            final IndentationCounter[] grown = new IndentationCounter[Math.max( depth + 1, frames.length * 2 )];
+            System.arraycopy( frames, 0, grown, 0, frames.length );
+            frames = grown;
+        }
+
+        IndentationCounter frame = frames[depth];
+        if ( frame == null )
+        {
+            frame = new IndentationCounter( depth, this );
+            frames[depth] = frame;
+        }
+        else
+        {
+            frame.reset();
+        }
+        return frame;
+    }
+
+    /**
+     * Equivalent to <code>parent.getChild( name, parent.getNamespace() )</code>, answered from a name index that is
+     * built the first time a large parent is searched and reused for the rest of the pass.
+     */
+    public Element getChild( final Element parent, final String name )
+    {
+        if ( parent.getContentSize() < INDEX_THRESHOLD )
+        {
+            return parent.getChild( name, parent.getNamespace() );
+        }
+
+        Map<String, Element> index = childIndexes.get( parent );
+        if ( index == null )
+        {
+            index = buildIndex( parent );
+        }
+
+        Element child = index.get( name );
+        if ( child != null && child.getParent() != parent )
+        {
+            // removed behind our back (eg. through a live children list); start over for this parent.
+            index = buildIndex( parent );
+            child = index.get( name );
+        }
+
+        return child;
+    }
+
+    /**
+     * Called after the text content of <code>element</code> was replaced.
+     */
+    public void textChanged( final Element element )
+    {
+        modificationCount++;
+        if ( track )
+        {
+            changed.add( element );
+        }
+        dirty.put( element, Boolean.TRUE );
+    }
+
+    /**
+     * @return the elements whose content (not counting changes further down) was modified in this pass
+     */
+    Set<Element> getDirtyElements()
+    {
+        return dirty.keySet();
+    }
+
+    Fingerprints getFingerprints()
+    {
+        return fingerprints;
+    }
+
+    void setFingerprints( final Fingerprints fingerprints )
+    {
+        this.fingerprints = fingerprints;
+    }
+
+    LazyDocument getLazyDocument()
+    {
+        return lazyDocument;
+    }
+
+    void setLazyDocument( final LazyDocument lazyDocument )
+    {
+        this.lazyDocument = lazyDocument;
+    }
+
+    /**
+     * @return the number of insertions, removals and text replacements made so far in this pass
+     */
+    public int getModificationCount()
+    {
+        return modificationCount;
+    }
+
+    /**
+     * @return true if this pass changed the document at all
+     */
+    public boolean isModified()
+    {
+        return modificationCount > 0;
+    }
+
+    /**
+     * @return the changes recorded so far, resolved against the current state of the document, or
+     *         {@link ChangeSet#EMPTY} if changes are not tracked
+     */
+    public ChangeSet getChangeSet()
+    {
+        return ChangeSet.create( created, removed, changed );
+    }
+
+    /**
+     * Keeps the index of <code>parent</code> in sync after <code>child</code> was inserted into it.
+     */
+    public void childAdded( final Element parent, final Element child )
+    {
+        modificationCount++;
+        if ( track )
+        {
+            created.add( child );
+        }
+        dirty.put( parent, Boolean.TRUE );
+        final Map<String, Element> index = childIndexes.get( parent );
+        if ( index != null && child.getNamespace().equals( parent.getNamespace() ) )
+        {
+            if ( index.containsKey( child.getName() ) )
+            {
+                // the new child may now precede the indexed one.
+                childIndexes.remove( parent );
+            }
+            else
+            {
+                index.put( child.getName(), child );
+            }
+        }
+    }
+
+    /**
+     * Keeps the index of <code>parent</code> in sync when <code>child</code> is being removed from it; called while the
+     * child is still attached.
+     */
+    public void childRemoved( final Element parent, final Element child )
+    {
+        modificationCount++;
+        dirty.put( parent, Boolean.TRUE );
+        if ( track )
+        {
+            List<Element> siblings = removalSiblings.get( parent );
+            if ( siblings == null )
+            {
+                siblings = new ArrayList<Element>( parent.getChildren() );
+                removalSiblings.put( parent, siblings );
+            }
+            removed.add( new ChangeSet.Removal( child, parent, siblings ) );
+        }
+        final Map<String, Element> index = childIndexes.get( parent );
+        if ( index != null && index.get( child.getName() ) == child )
+        {
+            // a later sibling with the same name may have to take its place.
+            childIndexes.remove( parent );
+        }
+    }
+
+    /**
+     * @return the namespace previously resolved for <code>prefix</code> under <code>parent</code> in this pass, or null
+     */
+    public Namespace getCachedNamespace( final Element parent, final String prefix )
+    {
+        final Map<String, Namespace> byPrefix = namespaces.get( parent );
+        return byPrefix == null ? null : byPrefix.get( prefix );
+    }
+
+    /**
+     * Remembers how <code>prefix</code> resolves for new children of <code>parent</code>. The writers never declare
+     * namespaces, so a resolution stays valid for the rest of the pass.
+     */
+    public void cacheNamespace( final Element parent, final String prefix, final Namespace namespace )
+    {
+        Map<String, Namespace> byPrefix = namespaces.get( parent );
+        if ( byPrefix == null )
+        {
+            byPrefix = new HashMap<String, Namespace>( 4 );
+            namespaces.put( parent, byPrefix );
+        }
+        byPrefix.put( prefix, namespace );
+    }
+
+    private Map<String, Element> buildIndex( final Element parent )
+    {
+        final Namespace namespace = parent.getNamespace();
+        final List<Element> children = parent.getChildren();
+        final Map<String, Element> index = new HashMap<String, Element>( children.size() * 2 );
+        for ( final Element child : children )
+        {
+            if ( namespace.equals( child.getNamespace() ) && !index.containsKey( child.getName() ) )
+            {
+                index.put( child.getName(), child );
+            }
+        }
+
+        childIndexes.put( parent, index );
+        return index;
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2012 Apache Software Foundation (jdcasey@commonjava.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.maven.io.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The result of an asynchronous write, completed by the last of its steps rather than by running it. Also holds the
+ * default executors of the asynchronous writes.
+ */
+final class WriteFuture
+    extends FutureTask<ChangeSet>
+{
+
+    static final int IO_THREADS = 4;
+
+    private static final class ComputeExecutor
+    {
+
+        static final ExecutorService INSTANCE =
+            Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), threads( "compute" ) );
+
+    }
+
+    private static final class IoExecutor
+    {
+
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool( IO_THREADS, threads( "io" ) );
+
+    }
+
+    WriteFuture()
+    {
+        super( new Callable<ChangeSet>()
+        {
+            public ChangeSet call()
+            {
+                throw new IllegalStateException( "Completed by the write, not run" );
+            }
+        } );
+    }
+
+    void complete( final ChangeSet changes )
+    {
+        set( changes );
+    }
+
+    void fail( final Throwable error )
+    {
+        setException( error );
+    }
+
+    static Executor computeExecutor()
+    {
+        return ComputeExecutor.INSTANCE;
+    }
+
+    static Executor ioExecutor()
+    {
+        return IoExecutor.INSTANCE;
+    }
+
+    private static ThreadFactory threads( final String kind )
+    {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory()
+        {
+            public Thread newThread( final Runnable runnable )
+            {
+                final Thread thread = new Thread( runnable, "jdom-writer-" + kind + "-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        };
+    }
+
+}
@@ -26,7 +26,10 @@ import org.jdom2.Text;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -35,10 +38,6 @@ import java.util.Map;
 public final class WriterUtils
 {
 
-    private static final String INDENT = "  ";
-
-    private static final String lineSeparator = "\n";
-
     private static final DefaultJDOMFactory factory = new DefaultJDOMFactory();
 
     private WriterUtils()
@@ -57,7 +56,7 @@ public final class WriterUtils
     public static Element updateElement( final IndentationCounter counter, final Element parent, final String name,
                                          final boolean shouldExist )
     {
-        Element element = parent.getChild( name, parent.getNamespace() );
+        Element element = getChild( counter, parent, name );
         if ( shouldExist )
         {
             if ( element == null )
@@ -69,24 +68,63 @@ public final class WriterUtils
         }
         else if ( element != null )
         {
-            final int index = parent.indexOf( element );
-            if ( index > 0 )
-            {
-                final Content previous = parent.getContent( index - 1 );
-                if ( previous instanceof Text )
-                {
-                    final Text txt = (Text) previous;
-                    if ( txt.getTextTrim().length() == 0 )
-                    {
-                        parent.removeContent( txt );
-                    }
-                }
-            }
-            parent.removeContent( element );
+            removeElement( counter, parent, element );
         }
         return element;
     } // -- Element updateElement( Counter, Element, String, boolean )
 
+    /**
+     * Method skipElement.
+     * 
+     * Accounts for a child the update leaves as it is, so that elements inserted after it still find their place.
+     * 
+     * @param counter
+     * @param parent
+     * @param name
+     */
+    public static void skipElement( final IndentationCounter counter, final Element parent, final String name )
+    {
+        if ( findChild( counter, parent, name ) != null )
+        {
+            counter.increaseCount();
+        }
+    } // -- void skipElement( Counter, Element, String )
+
+    /**
+     * Method isUpToDate.
+     * 
+     * @param counter
+     * @param value
+     * @param element
+     * @return true when <code>element</code> was last updated from a model object with the content of
+     *         <code>value</code> and has not changed since, so it can be left as it is
+     */
+    public static boolean isUpToDate( final IndentationCounter counter, final Object value, final Element element )
+    {
+        final UpdateContext context = counter.getContext();
+        return context != null && context.getFingerprints() != null
+            && context.getFingerprints().isUpToDate( value, element );
+    } // -- boolean isUpToDate( Counter, Object, Element )
+
+    /**
+     * Method markUpToDate.
+     * 
+     * Records that <code>element</code> was just updated from <code>value</code>, see
+     * {@link #isUpToDate(IndentationCounter, Object, Element)}.
+     * 
+     * @param counter
+     * @param value
+     * @param element
+     */
+    public static void markUpToDate( final IndentationCounter counter, final Object value, final Element element )
+    {
+        final UpdateContext context = counter.getContext();
+        if ( context != null && context.getFingerprints() != null )
+        {
+            context.getFingerprints().record( value, element );
+        }
+    } // -- void markUpToDate( Counter, Object, Element )
+
     /**
      * Method findAndReplaceXpp3DOM.
      * 
@@ -103,7 +141,7 @@ public final class WriterUtils
         final Element element = updateElement( counter, parent, name, shouldExist );
         if ( shouldExist )
         {
-            replaceXpp3DOM( element, dom, new IndentationCounter( counter.getDepth() + 1 ) );
+            replaceXpp3DOM( element, dom, counter.nextLevel() );
         }
         return element;
     } // -- Element findAndReplaceXpp3DOM( Counter, Element, String, Xpp3Dom )
@@ -120,68 +158,69 @@ public final class WriterUtils
         if ( parentDom.getChildCount() > 0 )
         {
             final Xpp3Dom[] childs = parentDom.getChildren();
-            final Collection domChilds = new ArrayList();
-            for ( final Xpp3Dom child : childs )
+            // name -> indexes of the not yet matched dom children with that name, in document order
+            final Map<String, LinkedList<Integer>> domChilds = new HashMap<String, LinkedList<Integer>>();
+            for ( int i = 0; i < childs.length; i++ )
             {
-                domChilds.add( child );
+                LinkedList<Integer> sameName = domChilds.get( childs[i].getName() );
+                if ( sameName == null )
+                {
+                    sameName = new LinkedList<Integer>();
+                    domChilds.put( childs[i].getName(), sameName );
+                }
+                sameName.add( i );
             }
+            final boolean[] matched = new boolean[childs.length];
             final ListIterator it = parent.getChildren().listIterator();
             while ( it.hasNext() )
             {
                 final Element elem = (Element) it.next();
-                final Iterator it2 = domChilds.iterator();
-                Xpp3Dom corrDom = null;
-                while ( it2.hasNext() )
-                {
-                    final Xpp3Dom dm = (Xpp3Dom) it2.next();
-                    if ( dm.getName().equals( elem.getName() ) )
-                    {
-                        corrDom = dm;
-                        break;
-                    }
-                }
-                if ( corrDom != null )
+                final LinkedList<Integer> sameName = domChilds.get( elem.getName() );
+                if ( sameName != null && !sameName.isEmpty() )
                 {
-                    domChilds.remove( corrDom );
-                    replaceXpp3DOM( elem, corrDom, new IndentationCounter( counter.getDepth() + 1 ) );
+                    final int index = sameName.removeFirst();
+                    matched[index] = true;
+                    replaceXpp3DOM( elem, childs[index], counter.nextLevel() );
                     counter.increaseCount();
                 }
                 else
                 {
+                    if ( counter.getContext() != null )
+                    {
+                        counter.getContext().childRemoved( parent, elem );
+                    }
                     it.remove();
                 }
             }
-            final Iterator it2 = domChilds.iterator();
-            while ( it2.hasNext() )
+            for ( int i = 0; i < childs.length; i++ )
             {
-                final Xpp3Dom dm = (Xpp3Dom) it2.next();
+                if ( matched[i] )
+                {
+                    continue;
+                }
+                final Xpp3Dom dm = childs[i];
                 final String rawName = dm.getName();
-                final String[] parts = rawName.split( ":" );
+                final int colon = rawName.indexOf( ':' );
 
                 Element elem;
-                if ( parts.length > 1 )
+                if ( colon > -1 && colon < rawName.length() - 1 )
                 {
-                    final String nsId = parts[0];
-                    String nsUrl = dm.getAttribute( "xmlns:" + nsId );
-                    final String name = parts[1];
-                    if ( nsUrl == null )
+                    final String nsId = rawName.substring( 0, colon );
+                    final int nameEnd = rawName.indexOf( ':', colon + 1 );
+                    final String name = rawName.substring( colon + 1, nameEnd < 0 ? rawName.length() : nameEnd );
+                    final String nsUrl = dm.getAttribute( "xmlns:" + nsId );
+                    if ( nsUrl != null )
                     {
-                        nsUrl = parentDom.getAttribute( "xmlns:" + nsId );
+                        elem = factory.element( name, Namespace.getNamespace( nsId, nsUrl ) );
+                    }
+                    else
+                    {
+                        elem = factory.element( name, getPrefixNamespace( counter, parent, parentDom, nsId ) );
                     }
-                    elem = factory.element( name, Namespace.getNamespace( nsId, nsUrl ) );
                 }
                 else
                 {
-                    Namespace root = parent.getNamespace();
-                    for ( Namespace n : parent.getNamespacesInherited())
-                    {
-                        if ( n.getPrefix() == null || n.getPrefix().length() == 0 )
-                        {
-                            root = n;
-                            break;
-                        }
-                    }
-                    elem = factory.element( dm.getName(), root );
+                    elem = factory.element( rawName, getDefaultNamespace( counter, parent ) );
                 }
 
                 final String[] attributeNames = dm.getAttributeNames();
@@ -196,7 +235,7 @@ public final class WriterUtils
 
                 insertAtPreferredLocation( parent, elem, counter );
                 counter.increaseCount();
-                replaceXpp3DOM( elem, dm, new IndentationCounter( counter.getDepth() + 1 ) );
+                replaceXpp3DOM( elem, dm, counter.nextLevel() );
             }
         }
         else if ( parentDom.getValue() != null )
@@ -213,11 +252,58 @@ public final class WriterUtils
 
             if ( ! foundCdata)
             {
-                parent.setText( parentDom.getValue() );
+                updateText( counter, parent, parentDom.getValue() );
             }
         }
     } // -- void replaceXpp3DOM( Element, Xpp3Dom, Counter )
 
+    /**
+     * @return the namespace bound to <code>prefix</code> by the xmlns attributes of <code>parentDom</code>, resolved
+     *         once per parent element and pass
+     */
+    private static Namespace getPrefixNamespace( final IndentationCounter counter, final Element parent,
+                                                 final Xpp3Dom parentDom, final String prefix )
+    {
+        final UpdateContext context = counter.getContext();
+        Namespace namespace = context == null ? null : context.getCachedNamespace( parent, prefix );
+        if ( namespace == null )
+        {
+            namespace = Namespace.getNamespace( prefix, parentDom.getAttribute( "xmlns:" + prefix ) );
+            if ( context != null )
+            {
+                context.cacheNamespace( parent, prefix, namespace );
+            }
+        }
+        return namespace;
+    }
+
+    /**
+     * @return the default namespace inherited by <code>parent</code>, or its own namespace if none is inherited;
+     *         resolved once per parent element and pass
+     */
+    private static Namespace getDefaultNamespace( final IndentationCounter counter, final Element parent )
+    {
+        final UpdateContext context = counter.getContext();
+        Namespace namespace = context == null ? null : context.getCachedNamespace( parent, "" );
+        if ( namespace == null )
+        {
+            namespace = parent.getNamespace();
+            for ( final Namespace n : parent.getNamespacesInherited() )
+            {
+                if ( n.getPrefix() == null || n.getPrefix().length() == 0 )
+                {
+                    namespace = n;
+                    break;
+                }
+            }
+            if ( context != null )
+            {
+                context.cacheNamespace( parent, "", namespace );
+            }
+        }
+        return namespace;
+    }
+
     /**
      * Method insertAtPreferredLocation.
      * 
@@ -228,14 +314,24 @@ public final class WriterUtils
     public static void insertAtPreferredLocation( final Element parent, final Element child,
                                                   final IndentationCounter counter )
     {
+        final int currentIndex = counter.getCurrentIndex();
+        final int contentSize = parent.getContentSize();
         int contentIndex = 0;
         int elementCounter = 0;
-        final Iterator it = parent.getContent().iterator();
         Text lastText = null;
+        if ( counter.canResumeInsertion( parent ) )
+        {
+            // pick up the walk where the previous insertion through this counter left it.
+            contentIndex = counter.getInsertionContentIndex();
+            elementCounter = counter.getInsertionElementCount();
+            lastText = counter.getInsertionText();
+        }
+        int position = contentIndex;
         int offset = 0;
-        while ( it.hasNext() && elementCounter <= counter.getCurrentIndex() )
+        while ( position < contentSize && elementCounter <= currentIndex )
         {
-            final Object next = it.next();
+            final Content next = parent.getContent( position );
+            position = position + 1;
             offset = offset + 1;
             if ( next instanceof Element )
             {
@@ -243,7 +339,7 @@ public final class WriterUtils
                 contentIndex = contentIndex + offset;
                 offset = 0;
             }
-            if ( next instanceof Text && it.hasNext() )
+            if ( next instanceof Text && position < contentSize )
             {
                 lastText = (Text) next;
             }
@@ -254,23 +350,353 @@ public final class WriterUtils
         }
         else
         {
-            String starter = lineSeparator;
-            for ( int i = 0; i < counter.getDepth(); i++ )
-            {
-                starter = starter + INDENT; // TODO make settable?
-            }
-            lastText = factory.text( starter );
+            lastText = newIndentation( counter );
         }
         if ( parent.getContentSize() == 0 )
         {
+            final int unitLength = getIndentation( counter ).getUnit().length();
             final Text finalText = lastText.clone();
-            finalText.setText( finalText.getText().substring( 0, finalText.getText().length() - INDENT.length() ) );
+            finalText.setText( finalText.getText().substring( 0, finalText.getText().length() - unitLength ) );
             parent.addContent( contentIndex, finalText );
         }
         parent.addContent( contentIndex, child );
         parent.addContent( contentIndex, lastText );
+        counter.setInsertionCursor( parent, child, contentIndex + 2, elementCounter + 1, lastText );
+        if ( counter.getContext() != null )
+        {
+            counter.getContext().childAdded( parent, child );
+        }
     } // -- void insertAtPreferredLocation( Element, Element, Counter )
 
+    /**
+     * Method appendAtPreferredLocation.
+     * 
+     * Same placement as {@link #insertAtPreferredLocation(Element, Element, IndentationCounter)}, for lists that add a
+     * run of new children through one counter. Once a child lands behind every other element of <code>parent</code>,
+     * the following ones are only collected together with their indentation and attached by
+     * {@link #flushInsertions(IndentationCounter)} in one splice, so the new children may still be detached while
+     * they are filled in.
+     * 
+     * @param parent
+     * @param child
+     * @param counter
+     */
+    public static void appendAtPreferredLocation( final Element parent, final Element child,
+                                                  final IndentationCounter counter )
+    {
+        if ( counter.getPendingParent() == parent )
+        {
+            final List<Content> pending = counter.getPending();
+            pending.add( counter.getInsertionText().clone() );
+            pending.add( child );
+            return;
+        }
+
+        flushInsertions( counter );
+        insertAtPreferredLocation( parent, child, counter );
+
+        // later insertions go straight behind this child only if nothing but the closing whitespace follows it.
+        final int contentSize = parent.getContentSize();
+        for ( int i = counter.getInsertionContentIndex(); i < contentSize; i++ )
+        {
+            final Content next = parent.getContent( i );
+            if ( next instanceof Element || ( next instanceof Text && i < contentSize - 1 ) )
+            {
+                return;
+            }
+        }
+        counter.setPendingParent( parent );
+    } // -- void appendAtPreferredLocation( Element, Element, Counter )
+
+    /**
+     * Method flushInsertions.
+     * 
+     * Attaches the children collected by {@link #appendAtPreferredLocation(Element, Element, IndentationCounter)} in one
+     * splice.
+     * 
+     * @param counter
+     */
+    public static void flushInsertions( final IndentationCounter counter )
+    {
+        final Element parent = counter.getPendingParent();
+        if ( parent == null )
+        {
+            return;
+        }
+        counter.setPendingParent( null );
+
+        final List<Content> pending = counter.getPending();
+        if ( pending.isEmpty() )
+        {
+            return;
+        }
+
+        final int contentIndex = counter.getInsertionContentIndex();
+        splice( parent, contentIndex, pending );
+
+        final int count = pending.size() / 2;
+        final Element last = (Element) pending.get( pending.size() - 1 );
+        final Text lastText = (Text) pending.get( pending.size() - 2 );
+        counter.setInsertionCursor( parent, last, contentIndex + pending.size(),
+                                    counter.getInsertionElementCount() + count, lastText );
+
+        final UpdateContext context = counter.getContext();
+        if ( context != null )
+        {
+            for ( int i = 1; i < pending.size(); i += 2 )
+            {
+                context.childAdded( parent, (Element) pending.get( i ) );
+            }
+        }
+        pending.clear();
+    } // -- void flushInsertions( Counter )
+
+    /**
+     * Method updateKeyedList.
+     * 
+     * Pairs the entries of <code>list</code> with the <code>childTag</code> children of <code>parent</code> by key
+     * rather than by position: matched elements are updated where they are, elements without a matching entry are
+     * removed and entries without a matching element are inserted after their predecessor. Elements that did not
+     * change are not touched at all.
+     * 
+     * Nothing is modified and false is returned when the list cannot be reconciled that way, ie. when an entry or
+     * element has no key, when existing elements share a key, or when the matched elements are not in list order; the
+     * caller should fall back to positional matching then.
+     * 
+     * @param counter counter for the children of <code>parent</code>
+     * @param parent
+     * @param list
+     * @param childTag
+     * @param updater
+     * @return boolean
+     */
+    public static <V> boolean updateKeyedList( final IndentationCounter counter, final Element parent,
+                                               final Collection<?> list, final String childTag,
+                                               final KeyedListUpdater<V> updater )
+    {
+        final List<Element> existing = new ArrayList<Element>( parent.getChildren( childTag, parent.getNamespace() ) );
+        final Map<String, Integer> positions = new HashMap<String, Integer>( existing.size() * 2 );
+        for ( int i = 0; i < existing.size(); i++ )
+        {
+            final String key = updater.getKey( existing.get( i ) );
+            if ( key == null || positions.put( key, i ) != null )
+            {
+                return false;
+            }
+        }
+
+        final Element[] matches = new Element[list.size()];
+        int i = 0;
+        int lastPosition = -1;
+        for ( final Object entry : list )
+        {
+            final V value = updater.cast( entry );
+            final String key = updater.getKey( value );
+            if ( key == null )
+            {
+                return false;
+            }
+            final Integer position = positions.remove( key );
+            if ( position != null )
+            {
+                if ( position < lastPosition )
+                {
+                    return false;
+                }
+                lastPosition = position;
+                matches[i] = existing.get( position );
+            }
+            i++;
+        }
+
+        final List<Integer> stale = new ArrayList<Integer>( positions.values() );
+        Collections.sort( stale );
+        for ( final Integer position : stale )
+        {
+            removeElement( counter, parent, existing.get( position ) );
+        }
+
+        // new entries are collected in runs and spliced in behind their predecessor once the run ends.
+        final boolean append = parent.getChildren().isEmpty();
+        final List<Element> run = new ArrayList<Element>();
+        int searchFrom = 0;
+        i = 0;
+        Element previous = null;
+        for ( final Object entry : list )
+        {
+            final V value = updater.cast( entry );
+            Element el = matches[i++];
+            if ( el == null )
+            {
+                el = factory.element( childTag, parent.getNamespace() );
+                if ( append )
+                {
+                    appendAtPreferredLocation( parent, el, counter );
+                }
+                else
+                {
+                    run.add( el );
+                }
+            }
+            else
+            {
+                searchFrom = insertRun( parent, previous, run, searchFrom, counter );
+                previous = el;
+            }
+            updater.update( value, childTag, counter, el );
+            counter.increaseCount();
+        }
+        insertRun( parent, previous, run, searchFrom, counter );
+        flushInsertions( counter );
+        return true;
+    } // -- boolean updateKeyedList( Counter, Element, Collection, String, KeyedListUpdater )
+
+    /**
+     * Method insertRun.
+     * 
+     * Inserts the elements of <code>run</code> right after <code>previous</code>, or in front of the first child
+     * element when <code>previous</code> is null, reusing the whitespace in front of that neighbour, and clears
+     * <code>run</code>. Matched elements are passed in document order, so <code>previous</code> is looked up from
+     * <code>searchFrom</code> on.
+     * 
+     * @param parent
+     * @param previous
+     * @param run
+     * @param searchFrom
+     * @param counter
+     * @return the content index to look up the next predecessor from
+     */
+    private static int insertRun( final Element parent, final Element previous, final List<Element> run,
+                                  final int searchFrom, final IndentationCounter counter )
+    {
+        if ( run.isEmpty() )
+        {
+            return searchFrom;
+        }
+
+        final Element neighbour = previous != null ? previous : parent.getChildren().get( 0 );
+        int index = searchFrom;
+        while ( parent.getContent( index ) != neighbour )
+        {
+            index++;
+        }
+        final Content before = index > 0 ? parent.getContent( index - 1 ) : null;
+        final Text indent;
+        if ( before instanceof Text && ( (Text) before ).getTextTrim().length() == 0 )
+        {
+            indent = (Text) before;
+        }
+        else
+        {
+            indent = newIndentation( counter );
+        }
+
+        final List<Content> nodes = new ArrayList<Content>( run.size() * 2 );
+        for ( final Element child : run )
+        {
+            if ( previous != null )
+            {
+                nodes.add( indent.clone() );
+                nodes.add( child );
+            }
+            else
+            {
+                nodes.add( child );
+                nodes.add( indent.clone() );
+            }
+        }
+        final int position = previous != null ? index + 1 : index;
+        splice( parent, position, nodes );
+
+        final UpdateContext context = counter.getContext();
+        if ( context != null )
+        {
+            for ( final Element child : run )
+            {
+                context.childAdded( parent, child );
+            }
+        }
+        run.clear();
+        return position + nodes.size();
+    } // -- int insertRun( Element, Element, List, int, Counter )
+
+    /**
+     * Method splice.
+     * 
+     * Inserts <code>nodes</code> at <code>index</code>. JDOM inserts collections one node at a time, so the nodes from
+     * <code>index</code> on are detached, <code>nodes</code> appended and the tail put back, leaving the content list
+     * to grow at its end only.
+     * 
+     * @param parent
+     * @param index
+     * @param nodes
+     */
+    private static void splice( final Element parent, final int index, final List<Content> nodes )
+    {
+        final List<Content> tail = new ArrayList<Content>( parent.getContentSize() - index );
+        for ( int i = parent.getContentSize() - 1; i >= index; i-- )
+        {
+            tail.add( parent.removeContent( i ) );
+        }
+        Collections.reverse( tail );
+        parent.addContent( nodes );
+        parent.addContent( tail );
+    } // -- void splice( Element, int, List )
+
+    /**
+     * Method removeElement.
+     * 
+     * Removes <code>element</code> together with the whitespace in front of it.
+     * 
+     * @param counter
+     * @param parent
+     * @param element
+     */
+    private static void removeElement( final IndentationCounter counter, final Element parent, final Element element )
+    {
+        final int index = parent.indexOf( element );
+        if ( index > 0 )
+        {
+            final Content previous = parent.getContent( index - 1 );
+            if ( previous instanceof Text )
+            {
+                final Text txt = (Text) previous;
+                if ( txt.getTextTrim().length() == 0 )
+                {
+                    parent.removeContent( txt );
+                }
+            }
+        }
+        if ( counter.getContext() != null )
+        {
+            counter.getContext().childRemoved( parent, element );
+        }
+        parent.removeContent( element );
+    } // -- void removeElement( Counter, Element, Element )
+
+    /**
+     * Method newIndentation.
+     * 
+     * @param counter
+     * @return a line break followed by the indentation for the counter's depth
+     */
+    private static Text newIndentation( final IndentationCounter counter )
+    {
+        return factory.text( getIndentation( counter ).get( counter.getDepth() ) );
+    } // -- Text newIndentation( Counter )
+
+    /**
+     * Method getIndentation.
+     * 
+     * @param counter
+     * @return the indentation of the counter's update pass, or the two-space default outside of one
+     */
+    private static Indentation getIndentation( final IndentationCounter counter )
+    {
+        final UpdateContext context = counter.getContext();
+        return context == null ? Indentation.DEFAULT : context.getIndentation();
+    } // -- Indentation getIndentation( Counter )
+
     /**
      * Method findAndReplaceProperties.
      * 
@@ -287,22 +713,60 @@ public final class WriterUtils
         final Element element = updateElement( counter, parent, name, shouldExist );
         if ( shouldExist )
         {
-            Iterator it = props.keySet().iterator();
-            final IndentationCounter innerCounter = new IndentationCounter( counter.getDepth() + 1 );
-            while ( it.hasNext() )
+            // one pass over the existing children: index them by name and note whether any of them must go.
+            final List<Element> children = element.getChildren();
+            final Map<String, Element> existing = new HashMap<String, Element>( children.size() * 2 );
+            boolean hasStale = false;
+            for ( final Element child : children )
             {
-                final String key = (String) it.next();
-                findAndReplaceSimpleElement( innerCounter, element, key, (String) props.get( key ), null );
+                if ( !props.containsKey( child.getName() ) )
+                {
+                    hasStale = true;
+                }
+                else if ( child.getNamespace().equals( element.getNamespace() )
+                    && !existing.containsKey( child.getName() ) )
+                {
+                    existing.put( child.getName(), child );
+                }
             }
-            final ArrayList lst = new ArrayList( props.keySet() );
-            it = element.getChildren().iterator();
+
+            final IndentationCounter innerCounter = counter.nextLevel();
+            final Iterator it = props.entrySet().iterator();
             while ( it.hasNext() )
             {
-                final Element elem = (Element) it.next();
-                final String key = elem.getName();
-                if ( !lst.contains( key ) )
+                final Map.Entry entry = (Map.Entry) it.next();
+                final String key = (String) entry.getKey();
+                final String value = (String) entry.getValue();
+                if ( value == null )
                 {
-                    it.remove();
+                    findAndReplaceSimpleElement( innerCounter, element, key, value, null );
+                    continue;
+                }
+
+                Element el = existing.get( key );
+                if ( el == null )
+                {
+                    el = factory.element( key, element.getNamespace() );
+                    insertAtPreferredLocation( element, el, innerCounter );
+                }
+                innerCounter.increaseCount();
+                updateText( innerCounter, el, value );
+            }
+
+            if ( hasStale )
+            {
+                final Iterator elIt = children.iterator();
+                while ( elIt.hasNext() )
+                {
+                    final Element elem = (Element) elIt.next();
+                    if ( !props.containsKey( elem.getName() ) )
+                    {
+                        if ( counter.getContext() != null )
+                        {
+                            counter.getContext().childRemoved( element, elem );
+                        }
+                        elIt.remove();
+                    }
                 }
             }
         }
@@ -324,7 +788,7 @@ public final class WriterUtils
     {
         if ( ( defaultValue != null ) && ( text != null ) && defaultValue.equals( text ) )
         {
-            final Element element = parent.getChild( name, parent.getNamespace() );
+            final Element element = getChild( counter, parent, name );
             // if exist and is default value or if doesn't exist.. just keep the way it is..
             if ( ( element != null && defaultValue.equals( element.getText() ) ) || element == null )
             {
@@ -335,11 +799,64 @@ public final class WriterUtils
         final Element element = updateElement( counter, parent, name, shouldExist );
         if ( shouldExist )
         {
-            element.setText( text );
+            updateText( counter, element, text );
         }
         return element;
     } // -- Element findAndReplaceSimpleElement( Counter, Element, String, String, String )
 
+    /**
+     * Method updateText.
+     * 
+     * Replaces the content of <code>element</code> by <code>text</code>, unless it already is exactly that text, so
+     * unchanged values keep their nodes and are not reported as modifications.
+     * 
+     * @param counter
+     * @param element
+     * @param text
+     * @return true if the element was changed
+     */
+    public static boolean updateText( final IndentationCounter counter, final Element element, final String text )
+    {
+        if ( element.getContentSize() == 0 && text.length() == 0 )
+        {
+            return false;
+        }
+        if ( element.getContentSize() == 1 )
+        {
+            final Content content = element.getContent( 0 );
+            if ( content.getCType() == Content.CType.Text && ( (Text) content ).getText().equals( text ) )
+            {
+                return false;
+            }
+        }
+
+        element.setText( text );
+        if ( counter.getContext() != null )
+        {
+            counter.getContext().textChanged( element );
+        }
+        return true;
+    } // -- boolean updateText( Counter, Element, String )
+
+    /**
+     * Method removeNext.
+     * 
+     * Removes the next element of <code>elIt</code>, a live iterator over children of <code>parent</code>.
+     * 
+     * @param counter
+     * @param parent
+     * @param elIt
+     */
+    public static void removeNext( final IndentationCounter counter, final Element parent, final Iterator elIt )
+    {
+        final Element element = (Element) elIt.next();
+        if ( counter.getContext() != null )
+        {
+            counter.getContext().childRemoved( parent, element );
+        }
+        elIt.remove();
+    } // -- void removeNext( Counter, Element, Iterator )
+
     /**
      * Method findAndReplaceSimpleLists.
      * 
@@ -364,7 +881,7 @@ public final class WriterUtils
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final String value = (String) it.next();
@@ -380,23 +897,63 @@ public final class WriterUtils
                 else
                 {
                     el = factory.element( childName, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
                 }
-                el.setText( value );
+                updateText( innerCount, el, value );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
         return element;
     } // -- Element findAndReplaceSimpleLists( Counter, Element, java.util.Collection, String, String )
 
+    /**
+     * Method getChild.
+     * 
+     * @param counter
+     * @param parent
+     * @param name
+     * @return the first child of <code>parent</code> with that name in the parent's namespace, as
+     *         {@link #findChild(IndentationCounter, Element, String)} finds it; its content is parsed first when the
+     *         document was parsed lazily, as the caller is about to descend into it
+     */
+    private static Element getChild( final IndentationCounter counter, final Element parent, final String name )
+    {
+        final Element child = findChild( counter, parent, name );
+        final UpdateContext context = counter.getContext();
+        if ( child != null && context != null && context.getLazyDocument() != null )
+        {
+            context.getLazyDocument().expand( child );
+        }
+        return child;
+    } // -- Element getChild( Counter, Element, String )
+
+    /**
+     * Method findChild.
+     * 
+     * @param counter
+     * @param parent
+     * @param name
+     * @return the first child of <code>parent</code> with that name in the parent's namespace, looked up through the
+     *         counter's {@link UpdateContext} when there is one
+     */
+    private static Element findChild( final IndentationCounter counter, final Element parent, final String name )
+    {
+        final UpdateContext context = counter.getContext();
+        if ( context == null )
+        {
+            return parent.getChild( name, parent.getNamespace() );
+        }
+        return context.getChild( parent, name );
+    } // -- Element findChild( Counter, Element, String )
+
     /**
      * Method updatePatternSet.
      * 
@@ -412,7 +969,7 @@ public final class WriterUtils
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleLists( innerCount, root, patternSet.getIncludes(), "includes", "include" );
             findAndReplaceSimpleLists( innerCount, root, patternSet.getExcludes(), "excludes", "exclude" );
         }
@@ -15,18 +15,27 @@
  */
 package org.apache.maven.model.io.jdom;
 
+import static org.apache.maven.io.util.WriterUtils.appendAtPreferredLocation;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceProperties;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceSimpleElement;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceSimpleLists;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceXpp3DOM;
-import static org.apache.maven.io.util.WriterUtils.insertAtPreferredLocation;
+import static org.apache.maven.io.util.WriterUtils.flushInsertions;
+import static org.apache.maven.io.util.WriterUtils.isUpToDate;
+import static org.apache.maven.io.util.WriterUtils.markUpToDate;
+import static org.apache.maven.io.util.WriterUtils.removeNext;
+import static org.apache.maven.io.util.WriterUtils.skipElement;
 import static org.apache.maven.io.util.WriterUtils.updateElement;
+import static org.apache.maven.io.util.WriterUtils.updateKeyedList;
 
 import java.io.IOException;
 import java.util.Iterator;
 
 import org.apache.maven.io.util.AbstractJDOMWriter;
 import org.apache.maven.io.util.IndentationCounter;
+import org.apache.maven.io.util.KeyedListUpdater;
+import org.apache.maven.io.util.ModelEquality;
+import org.apache.maven.io.util.StreamUpdate;
 import org.apache.maven.model.Activation;
 import org.apache.maven.model.ActivationFile;
 import org.apache.maven.model.ActivationOS;
@@ -81,6 +90,217 @@ import org.jdom2.Element;
 public class MavenJDOMWriter
     extends AbstractJDOMWriter<Model, MavenJDOMWriter>
 {
+
+    private static final String DEFAULT_PLUGIN_GROUP_ID = "org.apache.maven.plugins";
+
+    /**
+     * Field keyedListMatching.
+     */
+    private boolean keyedListMatching;
+
+    private final KeyedListUpdater<Dependency> dependencyUpdater = new KeyedListUpdater<Dependency>( Dependency.class )
+    {
+        @Override
+        public String getKey( final Dependency value )
+        {
+            return key( value.getGroupId(), value.getArtifactId(), value.getType(), value.getClassifier() );
+        }
+
+        @Override
+        public String getKey( final Element element )
+        {
+            return key( childText( element, "groupId", null ), childText( element, "artifactId", null ),
+                        childText( element, "type", "jar" ), childText( element, "classifier", null ) );
+        }
+
+        @Override
+        public void update( final Dependency value, final String childTag, final IndentationCounter counter,
+                            final Element element )
+        {
+            updateDependency( value, childTag, counter, element );
+        }
+    };
+
+    private final KeyedListUpdater<Exclusion> exclusionUpdater = new KeyedListUpdater<Exclusion>( Exclusion.class )
+    {
+        @Override
+        public String getKey( final Exclusion value )
+        {
+            return key( value.getGroupId(), value.getArtifactId() );
+        }
+
+        @Override
+        public String getKey( final Element element )
+        {
+            return key( childText( element, "groupId", null ), childText( element, "artifactId", null ) );
+        }
+
+        @Override
+        public void update( final Exclusion value, final String childTag, final IndentationCounter counter,
+                            final Element element )
+        {
+            updateExclusion( value, childTag, counter, element );
+        }
+    };
+
+    private final KeyedListUpdater<Extension> extensionUpdater = new KeyedListUpdater<Extension>( Extension.class )
+    {
+        @Override
+        public String getKey( final Extension value )
+        {
+            return key( value.getGroupId(), value.getArtifactId() );
+        }
+
+        @Override
+        public String getKey( final Element element )
+        {
+            return key( childText( element, "groupId", null ), childText( element, "artifactId", null ) );
+        }
+
+        @Override
+        public void update( final Extension value, final String childTag, final IndentationCounter counter,
+                            final Element element )
+        {
+            updateExtension( value, childTag, counter, element );
+        }
+    };
+
+    private final KeyedListUpdater<Plugin> pluginUpdater = new KeyedListUpdater<Plugin>( Plugin.class )
+    {
+        @Override
+        public String getKey( final Plugin value )
+        {
+            return key( value.getGroupId(), value.getArtifactId() );
+        }
+
+        @Override
+        public String getKey( final Element element )
+        {
+            return key( childText( element, "groupId", DEFAULT_PLUGIN_GROUP_ID ),
+                        childText( element, "artifactId", null ) );
+        }
+
+        @Override
+        public void update( final Plugin value, final String childTag, final IndentationCounter counter,
+                            final Element element )
+        {
+            updatePlugin( value, childTag, counter, element );
+        }
+    };
+
+    private final KeyedListUpdater<PluginExecution> pluginExecutionUpdater =
+        new KeyedListUpdater<PluginExecution>( PluginExecution.class )
+    {
+        @Override
+        public String getKey( final PluginExecution value )
+        {
+            return value.getId();
+        }
+
+        @Override
+        public String getKey( final Element element )
+        {
+            return childText( element, "id", "default" );
+        }
+
+        @Override
+        public void update( final PluginExecution value, final String childTag, final IndentationCounter counter,
+                            final Element element )
+        {
+            updatePluginExecution( value, childTag, counter, element );
+        }
+    };
+
+    private final KeyedListUpdater<Profile> profileUpdater = new KeyedListUpdater<Profile>( Profile.class )
+    {
+        @Override
+        public String getKey( final Profile value )
+        {
+            return value.getId();
+        }
+
+        @Override
+        public String getKey( final Element element )
+        {
+            return childText( element, "id", "default" );
+        }
+
+        @Override
+        public void update( final Profile value, final String childTag, final IndentationCounter counter,
+                            final Element element )
+        {
+            updateProfile( value, childTag, counter, element );
+        }
+    };
+
+    private final KeyedListUpdater<ReportPlugin> reportPluginUpdater =
+        new KeyedListUpdater<ReportPlugin>( ReportPlugin.class )
+    {
+        @Override
+        public String getKey( final ReportPlugin value )
+        {
+            return key( value.getGroupId(), value.getArtifactId() );
+        }
+
+        @Override
+        public String getKey( final Element element )
+        {
+            return key( childText( element, "groupId", DEFAULT_PLUGIN_GROUP_ID ),
+                        childText( element, "artifactId", null ) );
+        }
+
+        @Override
+        public void update( final ReportPlugin value, final String childTag, final IndentationCounter counter,
+                            final Element element )
+        {
+            updateReportPlugin( value, childTag, counter, element );
+        }
+    };
+
+    private final KeyedListUpdater<ReportSet> reportSetUpdater = new KeyedListUpdater<ReportSet>( ReportSet.class )
+    {
+        @Override
+        public String getKey( final ReportSet value )
+        {
+            return value.getId();
+        }
+
+        @Override
+        public String getKey( final Element element )
+        {
+            return childText( element, "id", "default" );
+        }
+
+        @Override
+        public void update( final ReportSet value, final String childTag, final IndentationCounter counter,
+                            final Element element )
+        {
+            updateReportSet( value, childTag, counter, element );
+        }
+    };
+
+    private final KeyedListUpdater<Repository> repositoryUpdater = new KeyedListUpdater<Repository>( Repository.class )
+    {
+        @Override
+        public String getKey( final Repository value )
+        {
+            return value.getId();
+        }
+
+        @Override
+        public String getKey( final Element element )
+        {
+            return childText( element, "id", null );
+        }
+
+        @Override
+        public void update( final Repository value, final String childTag, final IndentationCounter counter,
+                            final Element element )
+        {
+            updateRepository( value, childTag, counter, element );
+        }
+    };
+
     public MavenJDOMWriter()
     {
     }
@@ -95,6 +315,23 @@ public class MavenJDOMWriter
         super( model.getModelEncoding() == null ? "UTF-8" : model.getModelEncoding() );
     }
 
+    /**
+     * When enabled, dependencies, plugins, executions and the other identifiable lists of the POM are matched against
+     * the existing elements by their key (eg. groupId:artifactId:type:classifier for dependencies) instead of by
+     * position, so that inserting or removing an entry only touches that entry's element. Lists that cannot be matched
+     * that way (missing or duplicate keys, reordered entries) are still updated positionally.
+     */
+    public MavenJDOMWriter setKeyedListMatching( final boolean keyedListMatching )
+    {
+        this.keyedListMatching = keyedListMatching;
+        return this;
+    }
+
+    public boolean isKeyedListMatching()
+    {
+        return keyedListMatching;
+    }
+
     /**
      * Method iterateContributor.
      * 
@@ -118,7 +355,7 @@ public class MavenJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Contributor value = (Contributor) it.next();
@@ -134,17 +371,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateContributor( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateContributor( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -167,13 +408,17 @@ public class MavenJDOMWriter
         final Element element = updateElement( counter, parent, parentTag, shouldExist );
         if ( shouldExist )
         {
+            final IndentationCounter innerCount = counter.nextLevel();
+            if ( keyedListMatching && updateKeyedList( innerCount, element, list, childTag, dependencyUpdater ) )
+            {
+                return;
+            }
             final Iterator it = list.iterator();
             Iterator elIt = element.getChildren( childTag, element.getNamespace() ).iterator();
             if ( !elIt.hasNext() )
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
             while ( it.hasNext() )
             {
                 final Dependency value = (Dependency) it.next();
@@ -189,17 +434,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateDependency( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateDependency( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -228,7 +477,7 @@ public class MavenJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Developer value = (Developer) it.next();
@@ -244,17 +493,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateDeveloper( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateDeveloper( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -277,13 +530,17 @@ public class MavenJDOMWriter
         final Element element = updateElement( counter, parent, parentTag, shouldExist );
         if ( shouldExist )
         {
+            final IndentationCounter innerCount = counter.nextLevel();
+            if ( keyedListMatching && updateKeyedList( innerCount, element, list, childTag, exclusionUpdater ) )
+            {
+                return;
+            }
             final Iterator it = list.iterator();
             Iterator elIt = element.getChildren( childTag, element.getNamespace() ).iterator();
             if ( !elIt.hasNext() )
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
             while ( it.hasNext() )
             {
                 final Exclusion value = (Exclusion) it.next();
@@ -299,17 +556,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateExclusion( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateExclusion( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -332,13 +593,17 @@ public class MavenJDOMWriter
         final Element element = updateElement( counter, parent, parentTag, shouldExist );
         if ( shouldExist )
         {
+            final IndentationCounter innerCount = counter.nextLevel();
+            if ( keyedListMatching && updateKeyedList( innerCount, element, list, childTag, extensionUpdater ) )
+            {
+                return;
+            }
             final Iterator it = list.iterator();
             Iterator elIt = element.getChildren( childTag, element.getNamespace() ).iterator();
             if ( !elIt.hasNext() )
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
             while ( it.hasNext() )
             {
                 final Extension value = (Extension) it.next();
@@ -354,17 +619,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateExtension( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateExtension( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -393,7 +662,7 @@ public class MavenJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final License value = (License) it.next();
@@ -409,17 +678,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateLicense( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateLicense( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -448,7 +721,7 @@ public class MavenJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final MailingList value = (MailingList) it.next();
@@ -464,17 +737,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateMailingList( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateMailingList( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -503,7 +780,7 @@ public class MavenJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Notifier value = (Notifier) it.next();
@@ -519,17 +796,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateNotifier( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateNotifier( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -552,13 +833,17 @@ public class MavenJDOMWriter
         final Element element = updateElement( counter, parent, parentTag, shouldExist );
         if ( shouldExist )
         {
+            final IndentationCounter innerCount = counter.nextLevel();
+            if ( keyedListMatching && updateKeyedList( innerCount, element, list, childTag, pluginUpdater ) )
+            {
+                return;
+            }
             final Iterator it = list.iterator();
             Iterator elIt = element.getChildren( childTag, element.getNamespace() ).iterator();
             if ( !elIt.hasNext() )
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
             while ( it.hasNext() )
             {
                 final Plugin value = (Plugin) it.next();
@@ -574,17 +859,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updatePlugin( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updatePlugin( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -607,13 +896,17 @@ public class MavenJDOMWriter
         final Element element = updateElement( counter, parent, parentTag, shouldExist );
         if ( shouldExist )
         {
+            final IndentationCounter innerCount = counter.nextLevel();
+            if ( keyedListMatching && updateKeyedList( innerCount, element, list, childTag, pluginExecutionUpdater ) )
+            {
+                return;
+            }
             final Iterator it = list.iterator();
             Iterator elIt = element.getChildren( childTag, element.getNamespace() ).iterator();
             if ( !elIt.hasNext() )
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
             while ( it.hasNext() )
             {
                 final PluginExecution value = (PluginExecution) it.next();
@@ -629,17 +922,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updatePluginExecution( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updatePluginExecution( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -662,13 +959,17 @@ public class MavenJDOMWriter
         final Element element = updateElement( counter, parent, parentTag, shouldExist );
         if ( shouldExist )
         {
+            final IndentationCounter innerCount = counter.nextLevel();
+            if ( keyedListMatching && updateKeyedList( innerCount, element, list, childTag, profileUpdater ) )
+            {
+                return;
+            }
             final Iterator it = list.iterator();
             Iterator elIt = element.getChildren( childTag, element.getNamespace() ).iterator();
             if ( !elIt.hasNext() )
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
             while ( it.hasNext() )
             {
                 final Profile value = (Profile) it.next();
@@ -684,17 +985,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateProfile( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateProfile( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -717,13 +1022,17 @@ public class MavenJDOMWriter
         final Element element = updateElement( counter, parent, parentTag, shouldExist );
         if ( shouldExist )
         {
+            final IndentationCounter innerCount = counter.nextLevel();
+            if ( keyedListMatching && updateKeyedList( innerCount, element, list, childTag, reportPluginUpdater ) )
+            {
+                return;
+            }
             final Iterator it = list.iterator();
             Iterator elIt = element.getChildren( childTag, element.getNamespace() ).iterator();
             if ( !elIt.hasNext() )
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
             while ( it.hasNext() )
             {
                 final ReportPlugin value = (ReportPlugin) it.next();
@@ -739,17 +1048,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateReportPlugin( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateReportPlugin( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -772,13 +1085,17 @@ public class MavenJDOMWriter
         final Element element = updateElement( counter, parent, parentTag, shouldExist );
         if ( shouldExist )
         {
+            final IndentationCounter innerCount = counter.nextLevel();
+            if ( keyedListMatching && updateKeyedList( innerCount, element, list, childTag, reportSetUpdater ) )
+            {
+                return;
+            }
             final Iterator it = list.iterator();
             Iterator elIt = element.getChildren( childTag, element.getNamespace() ).iterator();
             if ( !elIt.hasNext() )
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
             while ( it.hasNext() )
             {
                 final ReportSet value = (ReportSet) it.next();
@@ -794,17 +1111,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateReportSet( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateReportSet( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -827,13 +1148,17 @@ public class MavenJDOMWriter
         final Element element = updateElement( counter, parent, parentTag, shouldExist );
         if ( shouldExist )
         {
+            final IndentationCounter innerCount = counter.nextLevel();
+            if ( keyedListMatching && updateKeyedList( innerCount, element, list, childTag, repositoryUpdater ) )
+            {
+                return;
+            }
             final Iterator it = list.iterator();
             Iterator elIt = element.getChildren( childTag, element.getNamespace() ).iterator();
             if ( !elIt.hasNext() )
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
             while ( it.hasNext() )
             {
                 final Repository value = (Repository) it.next();
@@ -849,17 +1174,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateRepository( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateRepository( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -888,7 +1217,7 @@ public class MavenJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Resource value = (Resource) it.next();
@@ -904,17 +1233,21 @@ public class MavenJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
+                }
+                if ( !isUpToDate( innerCount, value, el ) )
+                {
+                    updateResource( value, childTag, innerCount, el );
+                    markUpToDate( innerCount, value, el );
                 }
-                updateResource( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -935,7 +1268,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "activeByDefault",
@@ -968,7 +1301,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "missing", activationFile.getMissing() == null ? null
                             : activationFile.getMissing(), null );
             findAndReplaceSimpleElement( innerCount, root, "exists", activationFile.getExists() == null ? null
@@ -991,7 +1324,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "name",
@@ -1024,7 +1357,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "name", activationProperty.getName() == null ? null
                             : activationProperty.getName(), null );
             findAndReplaceSimpleElement( innerCount, root, "value", activationProperty.getValue() == null ? null
@@ -1042,12 +1375,29 @@ public class MavenJDOMWriter
      */
     protected void updateBuild( final Build build, final String xmlTag, final IndentationCounter counter,
                                 final Element element )
+    {
+        updateBuild( null, build, xmlTag, counter, element );
+    } // -- void updateBuild( Build, String, Counter, Element )
+
+    /**
+     * Method updateBuild.
+     * 
+     * Leaves alone the sections that are the same in <code>previous</code>, or updates all of them when it is null.
+     * 
+     * @param previous
+     * @param build
+     * @param element
+     * @param counter
+     * @param xmlTag
+     */
+    protected void updateBuild( final Build previous, final Build build, final String xmlTag,
+                                final IndentationCounter counter, final Element element )
     {
         final boolean shouldExist = ( build != null );
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "sourceDirectory", build.getSourceDirectory() == null ? null
                             : build.getSourceDirectory(), null );
             findAndReplaceSimpleElement( innerCount,
@@ -1068,14 +1418,26 @@ public class MavenJDOMWriter
                                          "testOutputDirectory",
                                          build.getTestOutputDirectory() == null ? null : build.getTestOutputDirectory(),
                                          null );
-            iterateExtension( innerCount, root, build.getExtensions(), "extensions", "extension" );
+            if ( previous == null
+                 || !same( previous.getExtensions(), build.getExtensions(), innerCount, root, "extensions" ) )
+            {
+                iterateExtension( innerCount, root, build.getExtensions(), "extensions", "extension" );
+            }
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "defaultGoal",
                                          build.getDefaultGoal() == null ? null : build.getDefaultGoal(),
                                          null );
-            iterateResource( innerCount, root, build.getResources(), "resources", "resource" );
-            iterateResource( innerCount, root, build.getTestResources(), "testResources", "testResource" );
+            if ( previous == null
+                 || !same( previous.getResources(), build.getResources(), innerCount, root, "resources" ) )
+            {
+                iterateResource( innerCount, root, build.getResources(), "resources", "resource" );
+            }
+            if ( previous == null
+                 || !same( previous.getTestResources(), build.getTestResources(), innerCount, root, "testResources" ) )
+            {
+                iterateResource( innerCount, root, build.getTestResources(), "testResources", "testResource" );
+            }
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "directory",
@@ -1086,11 +1448,21 @@ public class MavenJDOMWriter
                                          "finalName",
                                          build.getFinalName() == null ? null : build.getFinalName(),
                                          null );
-            findAndReplaceSimpleLists( innerCount, root, build.getFilters(), "filters", "filter" );
-            updatePluginManagement( build.getPluginManagement(), "pluginManagement", innerCount, root );
-            iteratePlugin( innerCount, root, build.getPlugins(), "plugins", "plugin" );
+            if ( previous == null || !same( previous.getFilters(), build.getFilters(), innerCount, root, "filters" ) )
+            {
+                findAndReplaceSimpleLists( innerCount, root, build.getFilters(), "filters", "filter" );
+            }
+            if ( previous == null || !same( previous.getPluginManagement(), build.getPluginManagement(), innerCount,
+                                            root, "pluginManagement" ) )
+            {
+                updatePluginManagement( build.getPluginManagement(), "pluginManagement", innerCount, root );
+            }
+            if ( previous == null || !same( previous.getPlugins(), build.getPlugins(), innerCount, root, "plugins" ) )
+            {
+                iteratePlugin( innerCount, root, build.getPlugins(), "plugins", "plugin" );
+            }
         }
-    } // -- void updateBuild( Build, String, Counter, Element )
+    } // -- void updateBuild( Build, Build, String, Counter, Element )
 
     /**
      * Method updateBuildBase.
@@ -1107,7 +1479,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "defaultGoal", buildBase.getDefaultGoal() == null ? null
                             : buildBase.getDefaultGoal(), null );
             iterateResource( innerCount, root, buildBase.getResources(), "resources", "resource" );
@@ -1137,7 +1509,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "system", ciManagement.getSystem() == null ? null
                             : ciManagement.getSystem(), null );
             findAndReplaceSimpleElement( innerCount,
@@ -1165,7 +1537,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "inherited",
@@ -1191,7 +1563,7 @@ public class MavenJDOMWriter
                                       final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "name",
@@ -1232,7 +1604,7 @@ public class MavenJDOMWriter
                                      final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "groupId",
@@ -1282,7 +1654,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             iterateDependency( innerCount, root, dependencyManagement.getDependencies(), "dependencies", "dependency" );
         }
     } // -- void updateDependencyManagement( DependencyManagement, String, Counter, Element )
@@ -1302,7 +1674,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "uniqueVersion",
@@ -1334,7 +1706,7 @@ public class MavenJDOMWriter
                                     final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount, root, "id", developer.getId() == null ? null : developer.getId(), null );
         findAndReplaceSimpleElement( innerCount,
                                      root,
@@ -1380,7 +1752,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             updateDeploymentRepository( distributionManagement.getRepository(), "repository", innerCount, root );
             updateDeploymentRepository( distributionManagement.getSnapshotRepository(),
                                         "snapshotRepository",
@@ -1411,7 +1783,7 @@ public class MavenJDOMWriter
                                     final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount, root, "artifactId", exclusion.getArtifactId() == null ? null
                         : exclusion.getArtifactId(), null );
         findAndReplaceSimpleElement( innerCount,
@@ -1433,7 +1805,7 @@ public class MavenJDOMWriter
                                     final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "groupId",
@@ -1463,7 +1835,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "directory",
@@ -1489,7 +1861,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "system", issueManagement.getSystem() == null ? null
                             : issueManagement.getSystem(), null );
             findAndReplaceSimpleElement( innerCount, root, "url", issueManagement.getUrl() == null ? null
@@ -1509,7 +1881,7 @@ public class MavenJDOMWriter
                                   final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "name",
@@ -1537,7 +1909,7 @@ public class MavenJDOMWriter
                                       final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "name",
@@ -1570,15 +1942,36 @@ public class MavenJDOMWriter
      */
     protected void updateModel( final Model model, final String xmlTag, final IndentationCounter counter,
                                 final Element element )
+    {
+        updateModel( null, model, xmlTag, counter, element );
+    } // -- void updateModel( Model, String, Counter, Element )
+
+    /**
+     * Method updateModel.
+     * 
+     * Leaves alone the sections that are the same in <code>previous</code>, the model the document holds, or updates
+     * all of them when it is null.
+     * 
+     * @param previous
+     * @param model
+     * @param element
+     * @param counter
+     * @param xmlTag
+     */
+    protected void updateModel( final Model previous, final Model model, final String xmlTag,
+                                final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "modelVersion",
                                      model.getModelVersion() == null ? null : model.getModelVersion(),
                                      null );
-        updateParent( model.getParent(), "parent", innerCount, root );
+        if ( previous == null || !same( previous.getParent(), model.getParent(), innerCount, root, "parent" ) )
+        {
+            updateParent( model.getParent(), "parent", innerCount, root );
+        }
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "groupId",
@@ -1611,27 +2004,102 @@ public class MavenJDOMWriter
                                      "inceptionYear",
                                      model.getInceptionYear() == null ? null : model.getInceptionYear(),
                                      null );
-        updateOrganization( model.getOrganization(), "organization", innerCount, root );
-        iterateLicense( innerCount, root, model.getLicenses(), "licenses", "license" );
-        iterateDeveloper( innerCount, root, model.getDevelopers(), "developers", "developer" );
-        iterateContributor( innerCount, root, model.getContributors(), "contributors", "contributor" );
-        iterateMailingList( innerCount, root, model.getMailingLists(), "mailingLists", "mailingList" );
-        updatePrerequisites( model.getPrerequisites(), "prerequisites", innerCount, root );
-        findAndReplaceSimpleLists( innerCount, root, model.getModules(), "modules", "module" );
-        updateScm( model.getScm(), "scm", innerCount, root );
-        updateIssueManagement( model.getIssueManagement(), "issueManagement", innerCount, root );
-        updateCiManagement( model.getCiManagement(), "ciManagement", innerCount, root );
-        updateDistributionManagement( model.getDistributionManagement(), "distributionManagement", innerCount, root );
-        findAndReplaceProperties( innerCount, root, "properties", model.getProperties() );
-        updateDependencyManagement( model.getDependencyManagement(), "dependencyManagement", innerCount, root );
-        iterateDependency( innerCount, root, model.getDependencies(), "dependencies", "dependency" );
-        iterateRepository( innerCount, root, model.getRepositories(), "repositories", "repository" );
-        iterateRepository( innerCount, root, model.getPluginRepositories(), "pluginRepositories", "pluginRepository" );
-        updateBuild( model.getBuild(), "build", innerCount, root );
-        findAndReplaceXpp3DOM( innerCount, root, "reports", (Xpp3Dom) model.getReports() );
-        updateReporting( model.getReporting(), "reporting", innerCount, root );
-        iterateProfile( innerCount, root, model.getProfiles(), "profiles", "profile" );
-    } // -- void updateModel( Model, String, Counter, Element )
+        if ( previous == null
+             || !same( previous.getOrganization(), model.getOrganization(), innerCount, root, "organization" ) )
+        {
+            updateOrganization( model.getOrganization(), "organization", innerCount, root );
+        }
+        if ( previous == null || !same( previous.getLicenses(), model.getLicenses(), innerCount, root, "licenses" ) )
+        {
+            iterateLicense( innerCount, root, model.getLicenses(), "licenses", "license" );
+        }
+        if ( previous == null
+             || !same( previous.getDevelopers(), model.getDevelopers(), innerCount, root, "developers" ) )
+        {
+            iterateDeveloper( innerCount, root, model.getDevelopers(), "developers", "developer" );
+        }
+        if ( previous == null
+             || !same( previous.getContributors(), model.getContributors(), innerCount, root, "contributors" ) )
+        {
+            iterateContributor( innerCount, root, model.getContributors(), "contributors", "contributor" );
+        }
+        if ( previous == null
+             || !same( previous.getMailingLists(), model.getMailingLists(), innerCount, root, "mailingLists" ) )
+        {
+            iterateMailingList( innerCount, root, model.getMailingLists(), "mailingLists", "mailingList" );
+        }
+        if ( previous == null
+             || !same( previous.getPrerequisites(), model.getPrerequisites(), innerCount, root, "prerequisites" ) )
+        {
+            updatePrerequisites( model.getPrerequisites(), "prerequisites", innerCount, root );
+        }
+        if ( previous == null || !same( previous.getModules(), model.getModules(), innerCount, root, "modules" ) )
+        {
+            findAndReplaceSimpleLists( innerCount, root, model.getModules(), "modules", "module" );
+        }
+        if ( previous == null || !same( previous.getScm(), model.getScm(), innerCount, root, "scm" ) )
+        {
+            updateScm( model.getScm(), "scm", innerCount, root );
+        }
+        if ( previous == null || !same( previous.getIssueManagement(), model.getIssueManagement(), innerCount,
+                                        root, "issueManagement" ) )
+        {
+            updateIssueManagement( model.getIssueManagement(), "issueManagement", innerCount, root );
+        }
+        if ( previous == null
+             || !same( previous.getCiManagement(), model.getCiManagement(), innerCount, root, "ciManagement" ) )
+        {
+            updateCiManagement( model.getCiManagement(), "ciManagement", innerCount, root );
+        }
+        if ( previous == null || !same( previous.getDistributionManagement(), model.getDistributionManagement(),
+                                        innerCount, root, "distributionManagement" ) )
+        {
+            updateDistributionManagement( model.getDistributionManagement(), "distributionManagement", innerCount,
+                                          root );
+        }
+        if ( previous == null
+             || !same( previous.getProperties(), model.getProperties(), innerCount, root, "properties" ) )
+        {
+            findAndReplaceProperties( innerCount, root, "properties", model.getProperties() );
+        }
+        if ( previous == null || !same( previous.getDependencyManagement(), model.getDependencyManagement(),
+                                        innerCount, root, "dependencyManagement" ) )
+        {
+            updateDependencyManagement( model.getDependencyManagement(), "dependencyManagement", innerCount, root );
+        }
+        if ( previous == null
+             || !same( previous.getDependencies(), model.getDependencies(), innerCount, root, "dependencies" ) )
+        {
+            iterateDependency( innerCount, root, model.getDependencies(), "dependencies", "dependency" );
+        }
+        if ( previous == null
+             || !same( previous.getRepositories(), model.getRepositories(), innerCount, root, "repositories" ) )
+        {
+            iterateRepository( innerCount, root, model.getRepositories(), "repositories", "repository" );
+        }
+        if ( previous == null || !same( previous.getPluginRepositories(), model.getPluginRepositories(), innerCount,
+                                        root, "pluginRepositories" ) )
+        {
+            iterateRepository( innerCount, root, model.getPluginRepositories(), "pluginRepositories",
+                               "pluginRepository" );
+        }
+        if ( previous == null || !same( previous.getBuild(), model.getBuild(), innerCount, root, "build" ) )
+        {
+            updateBuild( previous == null ? null : previous.getBuild(), model.getBuild(), "build", innerCount, root );
+        }
+        if ( previous == null || !same( previous.getReports(), model.getReports(), innerCount, root, "reports" ) )
+        {
+            findAndReplaceXpp3DOM( innerCount, root, "reports", (Xpp3Dom) model.getReports() );
+        }
+        if ( previous == null || !same( previous.getReporting(), model.getReporting(), innerCount, root, "reporting" ) )
+        {
+            updateReporting( model.getReporting(), "reporting", innerCount, root );
+        }
+        if ( previous == null || !same( previous.getProfiles(), model.getProfiles(), innerCount, root, "profiles" ) )
+        {
+            iterateProfile( innerCount, root, model.getProfiles(), "profiles", "profile" );
+        }
+    } // -- void updateModel( Model, Model, String, Counter, Element )
 
     /**
      * Method updateModelBase.
@@ -1648,7 +2116,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleLists( innerCount, root, modelBase.getModules(), "modules", "module" );
             updateDistributionManagement( modelBase.getDistributionManagement(),
                                           "distributionManagement",
@@ -1680,7 +2148,7 @@ public class MavenJDOMWriter
                                    final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "type",
@@ -1721,7 +2189,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "name",
@@ -1750,7 +2218,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "artifactId",
@@ -1783,7 +2251,7 @@ public class MavenJDOMWriter
                                  final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "groupId",
@@ -1830,7 +2298,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             updatePluginManagement( pluginConfiguration.getPluginManagement(), "pluginManagement", innerCount, root );
             iteratePlugin( innerCount, root, pluginConfiguration.getPlugins(), "plugins", "plugin" );
         }
@@ -1851,7 +2319,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             iteratePlugin( innerCount, root, pluginContainer.getPlugins(), "plugins", "plugin" );
         }
     } // -- void updatePluginContainer( PluginContainer, String, Counter, Element )
@@ -1868,7 +2336,7 @@ public class MavenJDOMWriter
                                           final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "id",
@@ -1897,7 +2365,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             iteratePlugin( innerCount, root, pluginManagement.getPlugins(), "plugins", "plugin" );
         }
     } // -- void updatePluginManagement( PluginManagement, String, Counter, Element )
@@ -1917,7 +2385,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "maven", prerequisites.getMaven() == null ? null
                             : prerequisites.getMaven(), "2.0" );
         }
@@ -1935,7 +2403,7 @@ public class MavenJDOMWriter
                                   final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "id",
@@ -1969,7 +2437,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "groupId", relocation.getGroupId() == null ? null
                             : relocation.getGroupId(), null );
             findAndReplaceSimpleElement( innerCount, root, "artifactId", relocation.getArtifactId() == null ? null
@@ -1993,7 +2461,7 @@ public class MavenJDOMWriter
                                        final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount, root, "groupId", reportPlugin.getGroupId() == null ? null
                         : reportPlugin.getGroupId(), "org.apache.maven.plugins" );
         findAndReplaceSimpleElement( innerCount, root, "artifactId", reportPlugin.getArtifactId() == null ? null
@@ -2018,7 +2486,7 @@ public class MavenJDOMWriter
                                     final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "id",
@@ -2048,7 +2516,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "excludeDefaults",
@@ -2075,7 +2543,7 @@ public class MavenJDOMWriter
                                      final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         updateRepositoryPolicy( repository.getReleases(), "releases", innerCount, root );
         updateRepositoryPolicy( repository.getSnapshots(), "snapshots", innerCount, root );
         findAndReplaceSimpleElement( innerCount,
@@ -2115,7 +2583,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "id",
@@ -2145,7 +2613,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "enabled", repositoryPolicy.getEnabled() == null ? null
                             : repositoryPolicy.getEnabled(), null );
             findAndReplaceSimpleElement( innerCount,
@@ -2175,7 +2643,7 @@ public class MavenJDOMWriter
                                    final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "targetPath",
@@ -2210,7 +2678,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "connection",
@@ -2241,7 +2709,7 @@ public class MavenJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "id", site.getId() == null ? null : site.getId(), null );
             findAndReplaceSimpleElement( innerCount, root, "name", site.getName() == null ? null : site.getName(), null );
             findAndReplaceSimpleElement( innerCount, root, "url", site.getUrl() == null ? null : site.getUrl(), null );
@@ -2255,4 +2723,233 @@ public class MavenJDOMWriter
         updateModel( source, "project", indentationCounter, rootElement );
     }
 
+    @Override
+    protected void update( final Model previous, final Model source, final IndentationCounter indentationCounter,
+                           final Element rootElement )
+        throws IOException
+    {
+        updateModel( previous, source, "project", indentationCounter, rootElement );
+    }
+
+    /**
+     * @return true if <code>previous</code> and <code>current</code> are equal, in which case the element for them is
+     *         skipped
+     */
+    private static boolean same( final Object previous, final Object current, final IndentationCounter counter,
+                                 final Element parent, final String xmlTag )
+    {
+        if ( !ModelEquality.equal( previous, current ) )
+        {
+            return false;
+        }
+        skipElement( counter, parent, xmlTag );
+        return true;
+    }
+
+    /**
+     * Streams the dependency lists entry by entry and every other section of the POM through its update method. With
+     * keyed list matching, the dependency lists are updated as a whole, as they are matched by key.
+     */
+    @Override
+    protected void updateStream( final Model source, final StreamUpdate root )
+    {
+        root.text( "modelVersion", source.getModelVersion(), null );
+        root.section( "parent", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                updateParent( source.getParent(), "parent", counter, parent );
+            }
+        } );
+        root.text( "groupId", source.getGroupId(), null );
+        root.text( "artifactId", source.getArtifactId(), null );
+        root.text( "version", source.getVersion(), null );
+        root.text( "packaging", source.getPackaging(), "jar" );
+        root.text( "name", source.getName(), null );
+        root.text( "description", source.getDescription(), null );
+        root.text( "url", source.getUrl(), null );
+        root.text( "inceptionYear", source.getInceptionYear(), null );
+        root.section( "organization", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                updateOrganization( source.getOrganization(), "organization", counter, parent );
+            }
+        } );
+        root.section( "licenses", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                iterateLicense( counter, parent, source.getLicenses(), "licenses", "license" );
+            }
+        } );
+        root.section( "developers", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                iterateDeveloper( counter, parent, source.getDevelopers(), "developers", "developer" );
+            }
+        } );
+        root.section( "contributors", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                iterateContributor( counter, parent, source.getContributors(), "contributors", "contributor" );
+            }
+        } );
+        root.section( "mailingLists", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                iterateMailingList( counter, parent, source.getMailingLists(), "mailingLists", "mailingList" );
+            }
+        } );
+        root.section( "prerequisites", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                updatePrerequisites( source.getPrerequisites(), "prerequisites", counter, parent );
+            }
+        } );
+        root.textList( "modules", "module", source.getModules() );
+        root.section( "scm", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                updateScm( source.getScm(), "scm", counter, parent );
+            }
+        } );
+        root.section( "issueManagement", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                updateIssueManagement( source.getIssueManagement(), "issueManagement", counter, parent );
+            }
+        } );
+        root.section( "ciManagement", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                updateCiManagement( source.getCiManagement(), "ciManagement", counter, parent );
+            }
+        } );
+        root.section( "distributionManagement", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                updateDistributionManagement( source.getDistributionManagement(), "distributionManagement", counter,
+                                              parent );
+            }
+        } );
+        root.section( "properties", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                findAndReplaceProperties( counter, parent, "properties", source.getProperties() );
+            }
+        } );
+        final DependencyManagement dependencyManagement = source.getDependencyManagement();
+        if ( keyedListMatching )
+        {
+            root.section( "dependencyManagement", new StreamUpdate.Section()
+            {
+                @Override
+                public void update( final IndentationCounter counter, final Element parent )
+                {
+                    updateDependencyManagement( dependencyManagement, "dependencyManagement", counter, parent );
+                }
+            } );
+            root.section( "dependencies", new StreamUpdate.Section()
+            {
+                @Override
+                public void update( final IndentationCounter counter, final Element parent )
+                {
+                    iterateDependency( counter, parent, source.getDependencies(), "dependencies", "dependency" );
+                }
+            } );
+        }
+        else
+        {
+            final StreamUpdate element = root.child( "dependencyManagement", dependencyManagement != null );
+            if ( dependencyManagement != null )
+            {
+                element.list( "dependencies", "dependency", dependencyManagement.getDependencies(),
+                              dependencyItemUpdater );
+            }
+            root.list( "dependencies", "dependency", source.getDependencies(), dependencyItemUpdater );
+        }
+        root.section( "repositories", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                iterateRepository( counter, parent, source.getRepositories(), "repositories", "repository" );
+            }
+        } );
+        root.section( "pluginRepositories", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                iterateRepository( counter, parent, source.getPluginRepositories(), "pluginRepositories",
+                                   "pluginRepository" );
+            }
+        } );
+        root.section( "build", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                updateBuild( source.getBuild(), "build", counter, parent );
+            }
+        } );
+        root.section( "reports", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                findAndReplaceXpp3DOM( counter, parent, "reports", (Xpp3Dom) source.getReports() );
+            }
+        } );
+        root.section( "reporting", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                updateReporting( source.getReporting(), "reporting", counter, parent );
+            }
+        } );
+        root.section( "profiles", new StreamUpdate.Section()
+        {
+            @Override
+            public void update( final IndentationCounter counter, final Element parent )
+            {
+                iterateProfile( counter, parent, source.getProfiles(), "profiles", "profile" );
+            }
+        } );
+    }
+
+    private final StreamUpdate.ItemUpdater<Dependency> dependencyItemUpdater =
+        new StreamUpdate.ItemUpdater<Dependency>()
+        {
+            @Override
+            public void update( final Dependency value, final String xmlTag, final IndentationCounter counter,
+                                final Element element )
+            {
+                updateDependency( value, xmlTag, counter, element );
+            }
+        };
+
 }
@@ -15,11 +15,13 @@
  */
 package org.apache.maven.settings.io.jdom;
 
+import static org.apache.maven.io.util.WriterUtils.appendAtPreferredLocation;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceProperties;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceSimpleElement;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceSimpleLists;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceXpp3DOM;
-import static org.apache.maven.io.util.WriterUtils.insertAtPreferredLocation;
+import static org.apache.maven.io.util.WriterUtils.flushInsertions;
+import static org.apache.maven.io.util.WriterUtils.removeNext;
 import static org.apache.maven.io.util.WriterUtils.updateElement;
 
 import java.io.IOException;
@@ -109,7 +111,7 @@ public class SettingsJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Mirror value = (Mirror) it.next();
@@ -125,17 +127,17 @@ public class SettingsJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
                 }
                 updateMirror( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -164,7 +166,7 @@ public class SettingsJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Profile value = (Profile) it.next();
@@ -180,17 +182,17 @@ public class SettingsJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
                 }
                 updateProfile( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -219,7 +221,7 @@ public class SettingsJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Proxy value = (Proxy) it.next();
@@ -235,17 +237,17 @@ public class SettingsJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
                 }
                 updateProxy( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -274,7 +276,7 @@ public class SettingsJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Repository value = (Repository) it.next();
@@ -290,17 +292,17 @@ public class SettingsJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
                 }
                 updateRepository( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -329,7 +331,7 @@ public class SettingsJDOMWriter
             {
                 elIt = null;
             }
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             while ( it.hasNext() )
             {
                 final Server value = (Server) it.next();
@@ -345,17 +347,17 @@ public class SettingsJDOMWriter
                 else
                 {
                     el = factory.element( childTag, element.getNamespace() );
-                    insertAtPreferredLocation( element, el, innerCount );
+                    appendAtPreferredLocation( element, el, innerCount );
                 }
                 updateServer( value, childTag, innerCount, el );
                 innerCount.increaseCount();
             }
+            flushInsertions( innerCount );
             if ( elIt != null )
             {
                 while ( elIt.hasNext() )
                 {
-                    elIt.next();
-                    elIt.remove();
+                    removeNext( innerCount, element, elIt );
                 }
             }
         }
@@ -376,7 +378,7 @@ public class SettingsJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "activeByDefault",
@@ -409,7 +411,7 @@ public class SettingsJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "missing", activationFile.getMissing() == null ? null
                             : activationFile.getMissing(), null );
             findAndReplaceSimpleElement( innerCount, root, "exists", activationFile.getExists() == null ? null
@@ -432,7 +434,7 @@ public class SettingsJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "name",
@@ -465,7 +467,7 @@ public class SettingsJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "name", activationProperty.getName() == null ? null
                             : activationProperty.getName(), null );
             findAndReplaceSimpleElement( innerCount, root, "value", activationProperty.getValue() == null ? null
@@ -488,7 +490,7 @@ public class SettingsJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "id", identifiableBase.getId() == null ? null
                             : identifiableBase.getId(), "default" );
         }
@@ -506,7 +508,7 @@ public class SettingsJDOMWriter
                                  final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "mirrorOf",
@@ -536,7 +538,7 @@ public class SettingsJDOMWriter
                                   final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         updateActivation( profile.getActivation(), "activation", innerCount, root );
         findAndReplaceProperties( innerCount, root, "properties", profile.getProperties() );
         iterateRepository( innerCount, root, profile.getRepositories(), "repositories", "repository" );
@@ -560,7 +562,7 @@ public class SettingsJDOMWriter
                                 final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "active",
@@ -607,7 +609,7 @@ public class SettingsJDOMWriter
                                      final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         updateRepositoryPolicy( repository.getReleases(), "releases", innerCount, root );
         updateRepositoryPolicy( repository.getSnapshots(), "snapshots", innerCount, root );
         findAndReplaceSimpleElement( innerCount,
@@ -647,7 +649,7 @@ public class SettingsJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount,
                                          root,
                                          "id",
@@ -677,7 +679,7 @@ public class SettingsJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
             findAndReplaceSimpleElement( innerCount, root, "enabled", repositoryPolicy.isEnabled() == true ? null
                             : String.valueOf( repositoryPolicy.isEnabled() ), "true" );
             findAndReplaceSimpleElement( innerCount,
@@ -707,7 +709,7 @@ public class SettingsJDOMWriter
                                  final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount,
                                      root,
                                      "username",
@@ -751,7 +753,7 @@ public class SettingsJDOMWriter
                                    final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount, root, "localRepository", settings.getLocalRepository() == null ? null
                         : settings.getLocalRepository(), null );
         findAndReplaceSimpleElement( innerCount, root, "interactiveMode", settings.isInteractiveMode() == true ? null
@@ -790,7 +792,7 @@ public class SettingsJDOMWriter
         final Element root = updateElement( counter, element, xmlTag, shouldExist );
         if ( shouldExist )
         {
-            final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+            final IndentationCounter innerCount = counter.nextLevel();
         }
     } // -- void updateTrackableBase( TrackableBase, String, Counter, Element )
 
@@ -17,11 +17,13 @@ package org.apache.maven.toolchain.model.io.jdom;
 
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceSimpleElement;
 import static org.apache.maven.io.util.WriterUtils.findAndReplaceXpp3DOM;
+import static org.apache.maven.io.util.WriterUtils.removeNext;
 
 import java.io.IOException;
 import java.util.Iterator;
 
 import org.apache.maven.io.util.AbstractJDOMWriter;
+import org.apache.maven.io.util.Indentation;
 import org.apache.maven.io.util.IndentationCounter;
 import org.apache.maven.toolchain.model.PersistedToolchains;
 import org.apache.maven.toolchain.model.ToolchainModel;
@@ -45,18 +47,11 @@ public class MavenToolchainsJDOMWriter
     // - Class/Member Variables -/
     // --------------------------/
 
-    private static final String INDENT = "  ";
-
     /**
      * Field factory.
      */
     private final JDOMFactory factory;
 
-    /**
-     * Field lineSeparator.
-     */
-    private final String lineSeparator;
-
     // ----------------/
     // - Constructors -/
     // ----------------/
@@ -64,7 +59,6 @@ public class MavenToolchainsJDOMWriter
     public MavenToolchainsJDOMWriter()
     {
         factory = new UncheckedJDOMFactory();
-        lineSeparator = "\n";
     } // -- org.apache.maven.toolchain.model.io.jdom.MavenToolchainsJDOMWriter()
 
     // -----------/
@@ -85,6 +79,8 @@ public class MavenToolchainsJDOMWriter
         int elementCounter = 0;
         final Iterator it = parent.getContent()
                                   .iterator();
+        final Indentation indentation =
+            counter.getContext() == null ? Indentation.DEFAULT : counter.getContext().getIndentation();
         Text lastText = null;
         int offset = 0;
         while ( it.hasNext() && elementCounter <= counter.getCurrentIndex() )
@@ -109,23 +105,22 @@ public class MavenToolchainsJDOMWriter
         }
         else
         {
-            String starter = lineSeparator;
-            for ( int i = 0; i < counter.getDepth(); i++ )
-            {
-                starter = starter + INDENT; // TODO make settable?
-            }
-            lastText = factory.text( starter );
+            lastText = factory.text( indentation.get( counter.getDepth() ) );
         }
         if ( parent.getContentSize() == 0 )
         {
             final Text finalText = lastText.clone();
             finalText.setText( finalText.getText()
                                         .substring( 0, finalText.getText()
-                                                                .length() - INDENT.length() ) );
+                                                                .length() - indentation.getUnit().length() ) );
             parent.addContent( contentIndex, finalText );
         }
         parent.addContent( contentIndex, child );
         parent.addContent( contentIndex, lastText );
+        if ( counter.getContext() != null )
+        {
+            counter.getContext().childAdded( parent, child );
+        }
     } // -- void insertAtPreferredLocation( Element, Element, Counter )
 
     /**
@@ -146,7 +141,7 @@ public class MavenToolchainsJDOMWriter
         {
             elIt = null;
         }
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         while ( it.hasNext() )
         {
             final ToolchainModel value = (ToolchainModel) it.next();
@@ -171,8 +166,7 @@ public class MavenToolchainsJDOMWriter
         {
             while ( elIt.hasNext() )
             {
-                elIt.next();
-                elIt.remove();
+                removeNext( innerCount, parent, elIt );
             }
         }
     } // -- void iterate2ToolchainModel( Counter, Element, java.util.Collection, java.lang.String )
@@ -189,7 +183,7 @@ public class MavenToolchainsJDOMWriter
                                               final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         iterate2ToolchainModel( innerCount, root, persistedToolchains.getToolchains(), "toolchain" );
     } // -- void updatePersistedToolchains( PersistedToolchains, String, Counter, Element )
 
@@ -205,7 +199,7 @@ public class MavenToolchainsJDOMWriter
                                          final IndentationCounter counter, final Element element )
     {
         final Element root = element;
-        final IndentationCounter innerCount = new IndentationCounter( counter.getDepth() + 1 );
+        final IndentationCounter innerCount = counter.nextLevel();
         findAndReplaceSimpleElement( innerCount, root, "type",
                                      toolchainModel.getType() == null ? null : toolchainModel.getType(), null );
         findAndReplaceXpp3DOM( innerCount, root, "provides", (Xpp3Dom) toolchainModel.getProvides() );
@@ -15,15 +15,48 @@
  */
 package org.apache.maven.model.io.jdom;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.apache.maven.io.util.ChangeSet;
+import org.apache.maven.io.util.DocumentModifier;
+import org.apache.maven.io.util.EditSession;
+import org.apache.maven.io.util.IndentationCounter;
+import org.apache.maven.io.util.SAXBuilderFactory;
+import org.apache.maven.io.util.SAXBuilderPool;
+import org.apache.maven.io.util.TextPatch;
+import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.toolchain.model.PersistedToolchains;
+import org.apache.maven.toolchain.model.ToolchainModel;
+import org.apache.maven.toolchain.model.io.jdom.MavenToolchainsJDOMWriter;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -57,4 +90,774 @@ public class MavenJDOMWriterTest
         new MavenJDOMWriter( model ).write( model, file );
     }
 
+    @Test
+    public void keyedListMatchingOnlyTouchesChangedDependencies()
+        throws Exception
+    {
+        final String depB =
+            "    <dependency>\n      <!-- keep me -->\n      <groupId>org.test</groupId>\n"
+                + "      <artifactId>b</artifactId>\n      <version>2</version>\n    </dependency>\n";
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>keyed</artifactId>\n  <version>1</version>\n  <dependencies>\n"
+                + "    <dependency>\n      <groupId>org.test</groupId>\n      <artifactId>a</artifactId>\n"
+                + "      <version>1</version>\n    </dependency>\n" + depB + "  </dependencies>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        final Dependency added = new Dependency();
+        added.setGroupId( "org.test" );
+        added.setArtifactId( "new" );
+        added.setVersion( "3" );
+        model.getDependencies().add( 0, added );
+        model.getDependencies().remove( 1 );
+
+        new MavenJDOMWriter( model ).setKeyedListMatching( true ).write( model, file );
+
+        final String result = FileUtils.fileRead( file, "UTF-8" );
+        assertThat( result, containsString( depB ) );
+        assertThat( result, not( containsString( "<artifactId>a</artifactId>" ) ) );
+
+        final Model written = read( file );
+        assertThat( written.getDependencies().size(), equalTo( 2 ) );
+        assertThat( written.getDependencies().get( 0 ).getArtifactId(), equalTo( "new" ) );
+        assertThat( written.getDependencies().get( 1 ).getArtifactId(), equalTo( "b" ) );
+    }
+
+    @Test
+    public void insertedElementsFollowDocumentIndentation()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n    <modelVersion>4.0.0</modelVersion>\n    <groupId>org.test</groupId>\n"
+                + "    <artifactId>indent</artifactId>\n    <version>1</version>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        final Dependency dep = new Dependency();
+        dep.setGroupId( "org.test" );
+        dep.setArtifactId( "dep" );
+        model.addDependency( dep );
+
+        new MavenJDOMWriter( model ).write( model, file );
+
+        final String result = FileUtils.fileRead( file, "UTF-8" );
+        assertThat( result, containsString( "\n    <dependencies>\n        <dependency>\n"
+            + "            <groupId>org.test</groupId>\n            <artifactId>dep</artifactId>\n"
+            + "        </dependency>\n    </dependencies>\n" ) );
+    }
+
+    @Test
+    public void appendedDependenciesKeepOrderAndLayout()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>batch</artifactId>\n  <version>1</version>\n  <dependencies>\n"
+                + "    <dependency>\n      <groupId>org.test</groupId>\n      <artifactId>dep0</artifactId>\n"
+                + "    </dependency>\n  </dependencies>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        for ( int i = 1; i < 50; i++ )
+        {
+            final Dependency dep = new Dependency();
+            dep.setGroupId( "org.test" );
+            dep.setArtifactId( "dep" + i );
+            model.addDependency( dep );
+        }
+
+        new MavenJDOMWriter( model ).write( model, file );
+
+        final String result = FileUtils.fileRead( file, "UTF-8" );
+        assertThat( result, containsString( "      <artifactId>dep48</artifactId>\n    </dependency>\n"
+            + "    <dependency>\n      <groupId>org.test</groupId>\n      <artifactId>dep49</artifactId>\n"
+            + "    </dependency>\n  </dependencies>\n" ) );
+
+        final Model written = read( file );
+        assertThat( written.getDependencies().size(), equalTo( 50 ) );
+        for ( int i = 0; i < 50; i++ )
+        {
+            assertThat( written.getDependencies().get( i ).getArtifactId(), equalTo( "dep" + i ) );
+        }
+    }
+
+    @Test
+    public void keyedListMatchingAppendsLongList()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>batch</artifactId>\n  <version>1</version>\n  <dependencies>\n"
+                + "    <dependency>\n      <groupId>org.test</groupId>\n      <artifactId>dep1</artifactId>\n"
+                + "    </dependency>\n  </dependencies>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        for ( int i = 0; i < 5000; i++ )
+        {
+            if ( i != 1 )
+            {
+                final Dependency dep = new Dependency();
+                dep.setGroupId( "org.test" );
+                dep.setArtifactId( "dep" + i );
+                model.getDependencies().add( i, dep );
+            }
+        }
+
+        new MavenJDOMWriter( model ).setKeyedListMatching( true ).write( model, file );
+
+        final String result = FileUtils.fileRead( file, "UTF-8" );
+        assertThat( result, containsString( "  <dependencies>\n    <dependency>\n      <groupId>org.test</groupId>\n"
+            + "      <artifactId>dep0</artifactId>\n    </dependency>\n    <dependency>\n" ) );
+        assertThat( result, containsString( "      <artifactId>dep4998</artifactId>\n    </dependency>\n"
+            + "    <dependency>\n      <groupId>org.test</groupId>\n      <artifactId>dep4999</artifactId>\n"
+            + "    </dependency>\n  </dependencies>\n" ) );
+
+        final Model written = read( file );
+        assertThat( written.getDependencies().size(), equalTo( 5000 ) );
+        for ( int i = 0; i < 5000; i++ )
+        {
+            assertThat( written.getDependencies().get( i ).getArtifactId(), equalTo( "dep" + i ) );
+        }
+    }
+
+    @Test
+    public void changeSetListsModifiedPaths()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>changes</artifactId>\n  <version>1</version>\n  <description>x</description>\n"
+                + "  <dependencies>\n    <dependency>\n      <groupId>org.test</groupId>\n"
+                + "      <artifactId>a</artifactId>\n    </dependency>\n  </dependencies>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        model.setVersion( "2" );
+        model.setDescription( null );
+        final Dependency dep = new Dependency();
+        dep.setGroupId( "org.test" );
+        dep.setArtifactId( "b" );
+        model.addDependency( dep );
+
+        final ChangeSet changes = new MavenJDOMWriter( model ).writeTracked( model, file );
+        assertThat( changes.getChanged(), equalTo( Arrays.asList( "/project/version" ) ) );
+        assertThat( changes.getRemoved(), equalTo( Arrays.asList( "/project/description" ) ) );
+        assertThat( changes.getCreated(), equalTo( Arrays.asList( "/project/dependencies/dependency[2]" ) ) );
+        assertThat( changes.size(), equalTo( 3 ) );
+
+        assertThat( new MavenJDOMWriter( model ).writeTracked( model, file ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void changeSetListsRemovedListEntries()
+        throws Exception
+    {
+        final StringBuilder pom =
+            new StringBuilder( "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>trim</artifactId>\n  <version>1</version>\n  <dependencies>\n" );
+        for ( int i = 0; i < 4; i++ )
+        {
+            pom.append( "    <dependency>\n      <groupId>org.test</groupId>\n      <artifactId>a" ).append( i );
+            pom.append( "</artifactId>\n    </dependency>\n" );
+        }
+        pom.append( "  </dependencies>\n</project>\n" );
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom.toString() );
+
+        final Model model = read( file );
+        model.getDependencies().subList( 1, 4 ).clear();
+
+        final ChangeSet changes = new MavenJDOMWriter( model ).writeTracked( model, file );
+        assertThat( changes.getRemoved(), equalTo( Arrays.asList( "/project/dependencies/dependency[2]",
+                                                                  "/project/dependencies/dependency[3]",
+                                                                  "/project/dependencies/dependency[4]" ) ) );
+        assertThat( changes.getCreatedCount() + changes.getChangedCount(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void keyedListMatchingRemovesEntriesInDocumentOrder()
+        throws Exception
+    {
+        final StringBuilder pom =
+            new StringBuilder( "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>trim</artifactId>\n  <version>1</version>\n  <dependencies>\n" );
+        final List<String> expected = new ArrayList<String>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            pom.append( "    <dependency>\n      <groupId>org.test</groupId>\n      <artifactId>a" ).append( i );
+            pom.append( "</artifactId>\n    </dependency>\n" );
+            if ( i > 0 )
+            {
+                expected.add( "/project/dependencies/dependency[" + ( i + 1 ) + "]" );
+            }
+        }
+        pom.append( "  </dependencies>\n</project>\n" );
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom.toString() );
+
+        final Model model = read( file );
+        model.getDependencies().subList( 1, 20 ).clear();
+
+        final ChangeSet changes = new MavenJDOMWriter( model ).setKeyedListMatching( true ).writeTracked( model, file );
+        assertThat( changes.getRemoved(), equalTo( expected ) );
+    }
+
+    @Test
+    public void skipUnchangedLeavesFileAlone()
+        throws Exception
+    {
+        final String pom =
+            "<?xml version='1.0'?>\n<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>skip</artifactId>\n  <version>1</version>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+        final long lastModified = file.lastModified() - 10000;
+        file.setLastModified( lastModified );
+
+        final Model model = read( file );
+        new MavenJDOMWriter( model ).setSkipUnchanged( true ).write( model, file );
+
+        assertThat( FileUtils.fileRead( file, "UTF-8" ), equalTo( pom ) );
+        assertThat( file.lastModified(), equalTo( lastModified ) );
+
+        model.setVersion( "2" );
+        new MavenJDOMWriter( model ).setSkipUnchanged( true ).write( model, file );
+        assertThat( FileUtils.fileRead( file, "UTF-8" ), containsString( "<version>2</version>" ) );
+    }
+
+    @Test
+    public void fileKeepsDeclaredEncoding()
+        throws Exception
+    {
+        final String pom =
+            "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<project>\n  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>org.test</groupId>\n  <artifactId>latin</artifactId>\n  <version>1</version>\n"
+                + "  <name>J\u00fcrgen</name>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "ISO-8859-1", pom );
+
+        final Model model = read( file );
+        model.setVersion( "2" );
+        new MavenJDOMWriter().write( model, file );
+
+        final String written = FileUtils.fileRead( file, "ISO-8859-1" );
+        assertThat( written, containsString( "encoding=\"ISO-8859-1\"" ) );
+        assertThat( written, containsString( "<name>J\u00fcrgen</name>" ) );
+        assertThat( written, containsString( "<version>2</version>" ) );
+    }
+
+    @Test
+    public void memoryMappedInputGivesSameOutput()
+        throws Exception
+    {
+        final String pom =
+            "<?xml version='1.0' encoding='UTF-8'?>\n<project>\n  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>org.test</groupId>\n  <artifactId>mapped</artifactId>\n  <version>1</version>\n"
+                + "</project>\n";
+
+        final File mapped = temp.newFile();
+        final File splicedMapped = temp.newFile();
+        final File reference = temp.newFile();
+        FileUtils.fileWrite( mapped.getPath(), "UTF-8", pom );
+        FileUtils.fileWrite( splicedMapped.getPath(), "UTF-8", pom );
+        FileUtils.fileWrite( reference.getPath(), "UTF-8", pom );
+
+        final Model model = read( mapped );
+        model.setVersion( "2" );
+        new MavenJDOMWriter( model ).setMemoryMapThreshold( 1 ).write( model, mapped );
+        new MavenJDOMWriter( model ).setMemoryMapThreshold( 1 ).setSpliceOutput( true ).write( model, splicedMapped );
+        new MavenJDOMWriter( model ).write( model, reference );
+
+        assertThat( FileUtils.fileRead( mapped, "UTF-8" ), equalTo( FileUtils.fileRead( reference, "UTF-8" ) ) );
+        assertThat( FileUtils.fileRead( splicedMapped, "UTF-8" ),
+                    equalTo( pom.replace( "<version>1</version>", "<version>2</version>" ) ) );
+
+        // an unchanged section is left alone with the previous model, mapped or not.
+        final String withModules = pom.replace( "</project>", "  <modules></modules>\n</project>" );
+        FileUtils.fileWrite( mapped.getPath(), "UTF-8", withModules );
+        FileUtils.fileWrite( reference.getPath(), "UTF-8", withModules );
+        final Model previous = read( mapped );
+        final Model changed = read( mapped );
+        changed.setVersion( "2" );
+        final ChangeSet mappedChanges =
+            new MavenJDOMWriter( changed ).setMemoryMapThreshold( 1 ).writeTracked( previous, changed, mapped );
+        final ChangeSet referenceChanges = new MavenJDOMWriter( changed ).writeTracked( previous, changed, reference );
+
+        assertThat( FileUtils.fileRead( mapped, "UTF-8" ), containsString( "<modules></modules>" ) );
+        assertThat( FileUtils.fileRead( mapped, "UTF-8" ), equalTo( FileUtils.fileRead( reference, "UTF-8" ) ) );
+        assertThat( mappedChanges.getChanged(), equalTo( referenceChanges.getChanged() ) );
+        assertThat( mappedChanges.getRemoved(), equalTo( referenceChanges.getRemoved() ) );
+    }
+
+    @Test
+    public void pooledBuildersAreReusedAcrossWriters()
+        throws Exception
+    {
+        // the DTD does not exist, so the file can only be parsed without loading it.
+        final String pom =
+            "<?xml version='1.0' encoding='UTF-8'?>\n<!DOCTYPE project SYSTEM \"missing.dtd\">\n<project>\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>pooled</artifactId>\n  <version>1</version>\n</project>\n";
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final List<SAXBuilder> created = new ArrayList<SAXBuilder>();
+        final SAXBuilderPool pool = new SAXBuilderPool( new SAXBuilderFactory()
+        {
+            public SAXBuilder newBuilder()
+            {
+                final SAXBuilder builder = new SAXBuilder();
+                builder.setFeature( "http://apache.org/xml/features/nonvalidating/load-external-dtd", false );
+                created.add( builder );
+                return builder;
+            }
+        }, 1 );
+
+        final Model model = read( file );
+        for ( int i = 2; i < 5; i++ )
+        {
+            model.setVersion( Integer.toString( i ) );
+            new MavenJDOMWriter().setParserPool( pool ).write( model, file );
+        }
+
+        assertThat( read( file ).getVersion(), equalTo( "4" ) );
+        assertThat( created.size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void byteOutputsMatchWriterOutput()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>bytes</artifactId>\n  <version>1</version>\n  <name>J\u00fcrgen \ud83d\ude00</name>\n"
+                + "</project>\n";
+        final Model model = new MavenXpp3Reader().read( new StringReader( pom ) );
+        model.setDescription( "\u00e9t\u00e9 \u2013 \ud83d\ude00" );
+        final MavenJDOMWriter writer = new MavenJDOMWriter( "UTF-8" );
+
+        final StringWriter expected = new StringWriter();
+        writer.write( model, new SAXBuilder().build( new StringReader( pom ) ), expected );
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writer.write( model, new SAXBuilder().build( new StringReader( pom ) ), stream );
+        assertThat( stream.toString( "UTF-8" ), equalTo( expected.toString() ) );
+
+        final ByteArrayOutputStream channelTarget = new ByteArrayOutputStream();
+        writer.write( model, new SAXBuilder().build( new StringReader( pom ) ), Channels.newChannel( channelTarget ) );
+        assertThat( channelTarget.toString( "UTF-8" ), equalTo( expected.toString() ) );
+
+        final ByteBuffer buffer = ByteBuffer.allocate( 4096 );
+        writer.write( model, new SAXBuilder().build( new StringReader( pom ) ), buffer );
+        assertThat( new String( buffer.array(), 0, buffer.position(), "UTF-8" ), equalTo( expected.toString() ) );
+
+        final ByteArrayOutputStream tracked = new ByteArrayOutputStream();
+        final ChangeSet changes =
+            writer.writeTracked( model, new SAXBuilder().build( new StringReader( pom ) ), tracked );
+        assertThat( tracked.toString( "UTF-8" ), equalTo( expected.toString() ) );
+        assertThat( changes.getCreated(), equalTo( Arrays.asList( "/project/description" ) ) );
+    }
+
+    @Test
+    public void asyncWritesUpdateFiles()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>async</artifactId>\n  <version>1</version>\n</project>\n";
+
+        final List<File> files = new ArrayList<File>();
+        final List<Future<ChangeSet>> results = new ArrayList<Future<ChangeSet>>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            final File file = temp.newFile();
+            FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+            final Model model = read( file );
+            model.setVersion( "2." + i );
+            files.add( file );
+            results.add( new MavenJDOMWriter( model ).setSpliceOutput( i % 2 == 0 ).writeAsync( model, file ) );
+        }
+
+        for ( int i = 0; i < files.size(); i++ )
+        {
+            assertThat( results.get( i ).get().getChanged(), equalTo( Arrays.asList( "/project/version" ) ) );
+            assertThat( FileUtils.fileRead( files.get( i ), "UTF-8" ),
+                        containsString( "<version>2." + i + "</version>" ) );
+        }
+
+        final File missing = new File( temp.getRoot(), "missing.xml" );
+        try
+        {
+            new MavenJDOMWriter().writeAsync( new Model(), missing ).get();
+            fail( "missing file written" );
+        }
+        catch ( final ExecutionException e )
+        {
+            assertThat( e.getCause() instanceof IOException, equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void spliceOutputOnlyRewritesChangedElements()
+        throws Exception
+    {
+        final String head =
+            "<?xml version='1.0' encoding='UTF-8'?>\r\n<project xmlns='http://maven.apache.org/POM/4.0.0'>\r\n"
+                + "  <modelVersion>4.0.0</modelVersion>\r\n  <parent>\r\n    <groupId>org.test</groupId>\r\n"
+                + "    <artifactId>parent</artifactId>\r\n    <version>1</version>\r\n"
+                + "    <relativePath />\r\n  </parent>\r\n  <artifactId>splice</artifactId>\r\n";
+        final String tail = "\r\n  <!-- trailing -->\r\n</project>\r\n";
+        final String pom = head + "  <version>1</version>" + tail;
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        model.setVersion( "2" );
+        new MavenJDOMWriter( model ).setSpliceOutput( true ).write( model, file );
+
+        assertThat( FileUtils.fileRead( file, "UTF-8" ), equalTo( head + "  <version>2</version>" + tail ) );
+    }
+
+    @Test
+    public void atomicWritesLeaveFileIntactOnFailure()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>atomic</artifactId>\n  <version>1</version>\n</project>\n";
+
+        final File dir = temp.newFolder();
+        final File file = new File( dir, "pom.xml" );
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        model.setVersion( "2" );
+        final MavenJDOMWriter writer = new MavenJDOMWriter( model ).setAtomicWrites( true ).setSyncWrites( true );
+        try
+        {
+            writer.write( model, file, new DocumentModifier()
+            {
+                @Override
+                public void postProcess( final Document document )
+                {
+                    throw new IllegalStateException( "failed" );
+                }
+            } );
+        }
+        catch ( final IllegalStateException e )
+        {
+            // expected
+        }
+        assertThat( FileUtils.fileRead( file, "UTF-8" ), equalTo( pom ) );
+        assertThat( Arrays.asList( dir.list() ), equalTo( Arrays.asList( "pom.xml" ) ) );
+
+        writer.write( model, file );
+        assertThat( FileUtils.fileRead( file, "UTF-8" ), containsString( "<version>2</version>" ) );
+        assertThat( Arrays.asList( dir.list() ), equalTo( Arrays.asList( "pom.xml" ) ) );
+    }
+
+    @Test
+    public void streamingWriteUpdatesInPlace()
+        throws Exception
+    {
+        final String pom =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>stream</artifactId>\n  <version>1</version>\n  <!-- deps -->\n  <dependencies>\n"
+                + "    <dependency>\n      <groupId>org.test</groupId>\n      <artifactId>a</artifactId>\n"
+                + "    </dependency>\n  </dependencies>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        model.setVersion( "2" );
+        model.setDescription( "streamed" );
+        final Dependency dep = new Dependency();
+        dep.setGroupId( "org.test" );
+        dep.setArtifactId( "b" );
+        model.addDependency( dep );
+
+        final ChangeSet changes =
+            new MavenJDOMWriter( model ).setLineSeparator( "\n" ).writeStreaming( model, file );
+        assertThat( changes.getChanged(), equalTo( Arrays.asList( "/project/version" ) ) );
+        assertThat( changes.getCreated(), equalTo( Arrays.asList( "/project/dependencies/dependency[2]",
+                                                                  "/project/description" ) ) );
+
+        assertThat( FileUtils.fileRead( file, "UTF-8" ),
+                    equalTo( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                        + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                        + "  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                        + "  <artifactId>stream</artifactId>\n  <version>2</version>\n  <!-- deps -->\n"
+                        + "  <dependencies>\n    <dependency>\n      <groupId>org.test</groupId>\n"
+                        + "      <artifactId>a</artifactId>\n    </dependency>\n    <dependency>\n"
+                        + "      <groupId>org.test</groupId>\n      <artifactId>b</artifactId>\n    </dependency>\n"
+                        + "  </dependencies>\n  <description>streamed</description>\n</project>\n" ) );
+
+        assertThat( new MavenJDOMWriter( model ).writeStreaming( model, file ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void streamingWriteKeepsEncodingAndLineSeparator()
+        throws Exception
+    {
+        final String pom =
+            "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\r\n<project>\r\n  <modelVersion>4.0.0</modelVersion>\r\n"
+                + "  <groupId>org.test</groupId>\r\n  <artifactId>stream</artifactId>\r\n  <version>1</version>\r\n"
+                + "  <name>J\u00fcrgen</name>\r\n</project>\r\n";
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "ISO-8859-1", pom );
+
+        final Model model = read( file );
+        model.setVersion( "2" );
+        new MavenJDOMWriter().writeStreaming( model, file );
+
+        assertThat( FileUtils.fileRead( file, "ISO-8859-1" ),
+                    equalTo( pom.replace( "<version>1</version>", "<version>2</version>" ) ) );
+    }
+
+    @Test
+    public void diffReportsEditsWithoutWriting()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>diff</artifactId>\n  <version>1</version>\n  <dependencies>\n    <dependency>\n"
+                + "      <groupId>org.test</groupId>\n      <artifactId>a</artifactId>\n    </dependency>\n"
+                + "  </dependencies>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        model.setVersion( "2" );
+        final Dependency dep = new Dependency();
+        dep.setGroupId( "org.test" );
+        dep.setArtifactId( "b" );
+        model.addDependency( dep );
+
+        final TextPatch patch = new MavenJDOMWriter( model ).diff( model, file );
+        assertThat( FileUtils.fileRead( file, "UTF-8" ), equalTo( pom ) );
+        assertThat( patch.getEdits().size(), equalTo( 2 ) );
+        assertThat( patch.getEdits().get( 0 ).getReplacement(), equalTo( "2" ) );
+        assertThat( patch.getChangeSet().getCreated(),
+                    equalTo( Arrays.asList( "/project/dependencies/dependency[2]" ) ) );
+
+        assertThat( patch.toUnifiedDiff( "a/pom.xml", "b/pom.xml", 1 ),
+                    equalTo( "--- a/pom.xml\n+++ b/pom.xml\n@@ -4,3 +4,3 @@\n   <artifactId>diff</artifactId>\n"
+                        + "-  <version>1</version>\n+  <version>2</version>\n   <dependencies>\n@@ -10,2 +10,6 @@\n"
+                        + "     </dependency>\n+    <dependency>\n+      <groupId>org.test</groupId>\n"
+                        + "+      <artifactId>b</artifactId>\n+    </dependency>\n   </dependencies>\n" ) );
+
+        new MavenJDOMWriter( model ).setSpliceOutput( true ).write( model, file );
+        assertThat( patch.apply(), equalTo( FileUtils.fileRead( file, "UTF-8" ) ) );
+    }
+
+    @Test
+    public void editSessionReusesDocumentUntilFileChanges()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>session</artifactId>\n  <version>1</version>\n</project>\n";
+
+        final File file = temp.newFile();
+        final File reference = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+        FileUtils.fileWrite( reference.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        final MavenJDOMWriter writer = new MavenJDOMWriter( model ).setSpliceOutput( true );
+        final EditSession<Model> session = writer.openSession( file );
+        for ( int i = 2; i <= 3; i++ )
+        {
+            model.setVersion( "2." + i );
+            model.setDescription( "v" + i );
+            session.write( model );
+            writer.write( model, reference );
+            assertThat( FileUtils.fileRead( file, "UTF-8" ), equalTo( FileUtils.fileRead( reference, "UTF-8" ) ) );
+        }
+
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom.replace( "</project>", "  <!-- edited -->\n</project>" ) );
+        model.setVersion( "4" );
+        final ChangeSet changes = session.write( model );
+        assertThat( changes.getChanged(), equalTo( Arrays.asList( "/project/version" ) ) );
+        assertThat( FileUtils.fileRead( file, "UTF-8" ), containsString( "<!-- edited -->" ) );
+    }
+
+    @Test
+    public void writeWithPreviousModelSkipsUnchangedSections()
+        throws Exception
+    {
+        final String pom =
+            "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>previous</artifactId>\n  <version>1</version>\n  <url>http://example.org</url>\n"
+                + "  <modules></modules>\n</project>\n";
+
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model previous = read( file );
+        final Model model = read( file );
+        model.setVersion( "2" );
+        model.setDescription( "added" );
+
+        final ChangeSet changes = new MavenJDOMWriter( model ).writeTracked( previous, model, file );
+        assertThat( changes.getChanged(), equalTo( Arrays.asList( "/project/version" ) ) );
+        assertThat( changes.getCreated(), equalTo( Arrays.asList( "/project/description" ) ) );
+
+        // the empty modules element would be removed by a full update.
+        assertThat( FileUtils.fileRead( file, "UTF-8" ),
+                    containsString( "  <version>2</version>\n  <url>http://example.org</url>\n"
+                        + "  <description>added</description>\n  <modules></modules>\n</project>" ) );
+    }
+
+    @Test
+    public void lazyParsingMatchesFullParse()
+        throws Exception
+    {
+        final String pom =
+            "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>org.test</groupId>\n  <artifactId>lazy</artifactId>\n  <version>1</version>\n"
+                + "  <properties>\n    <a>1</a>   <b/>\n  </properties>\n  <build>\n    <plugins>\n      <plugin>\n"
+                + "        <artifactId>p</artifactId>\n        <version>1</version>\n      </plugin>\n"
+                + "    </plugins>\n  </build>\n</project>\n";
+
+        final File file = temp.newFile();
+        final File reference = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+        FileUtils.fileWrite( reference.getPath(), "UTF-8", pom );
+
+        final Model previous = read( file );
+        final Model model = read( file );
+        model.setVersion( "2" );
+        model.getBuild().getPlugins().get( 0 ).setVersion( "2" );
+
+        final ChangeSet changes =
+            new MavenJDOMWriter( model ).setLazyParsing( true ).writeTracked( previous, model, file );
+        new MavenJDOMWriter( model ).setSpliceOutput( true ).write( previous, model, reference );
+
+        assertThat( changes.getChanged(),
+                    equalTo( Arrays.asList( "/project/version", "/project/build/plugins/plugin/version" ) ) );
+        final String written = FileUtils.fileRead( file, "UTF-8" );
+        assertThat( written, equalTo( FileUtils.fileRead( reference, "UTF-8" ) ) );
+        assertThat( written, containsString( "  <properties>\n    <a>1</a>   <b/>\n  </properties>\n" ) );
+    }
+
+    @Test
+    public void lazyParsingKeepsByteOrderMark()
+        throws Exception
+    {
+        final String pom =
+            "\uFEFF<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<project>\n  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>org.test</groupId>\n  <artifactId>bom</artifactId>\n  <version>1</version>\n"
+                + "</project>\n";
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom );
+
+        final Model model = read( file );
+        model.setVersion( "2" );
+        new MavenJDOMWriter( model ).setLazyParsing( true ).write( model, file );
+
+        assertThat( FileUtils.fileRead( file, "UTF-8" ),
+                    equalTo( pom.replace( "<version>1</version>", "<version>2</version>" ) ) );
+    }
+
+    @Test
+    public void toolchainsWriterUsesIndentUnit()
+        throws Exception
+    {
+        final File file = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", "<toolchains></toolchains>\n" );
+
+        final ToolchainModel toolchain = new ToolchainModel();
+        toolchain.setType( "jdk" );
+        final PersistedToolchains toolchains = new PersistedToolchains();
+        toolchains.addToolchain( toolchain );
+        new MavenToolchainsJDOMWriter().setIndentUnit( "\t" ).write( toolchains, file );
+
+        final String result = FileUtils.fileRead( file, "UTF-8" );
+        assertThat( result, containsString( "\t<toolchain>\n" ) );
+        assertThat( result, not( containsString( "  " ) ) );
+    }
+
+    @Test
+    public void fingerprintsSkipUnchangedPluginsOnRewrite()
+        throws Exception
+    {
+        final StringBuilder pom =
+            new StringBuilder( "<project>\n  <modelVersion>4.0.0</modelVersion>\n  <groupId>org.test</groupId>\n"
+                + "  <artifactId>prints</artifactId>\n  <version>1</version>\n  <build>\n    <pluginManagement>\n"
+                + "      <plugins>\n" );
+        for ( int i = 0; i < 5; i++ )
+        {
+            pom.append( "        <plugin>\n          <artifactId>p" + i + "</artifactId>\n"
+                + "          <version>1</version>\n        </plugin>\n" );
+        }
+        pom.append( "      </plugins>\n    </pluginManagement>\n  </build>\n</project>\n" );
+
+        final File file = temp.newFile();
+        final File reference = temp.newFile();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", pom.toString() );
+        FileUtils.fileWrite( reference.getPath(), "UTF-8", pom.toString() );
+
+        final int[] updates = new int[1];
+        final Model model = read( file );
+        final MavenJDOMWriter writer = new MavenJDOMWriter( model )
+        {
+            @Override
+            protected void updatePlugin( final Plugin plugin, final String xmlTag, final IndentationCounter counter,
+                                         final Element element )
+            {
+                updates[0]++;
+                super.updatePlugin( plugin, xmlTag, counter, element );
+            }
+        };
+        final EditSession<Model> session = writer.setFingerprints( true ).openSession( file );
+
+        session.write( model );
+        assertThat( updates[0], equalTo( 5 ) );
+
+        model.getBuild().getPluginManagement().getPlugins().get( 3 ).setVersion( "2" );
+        updates[0] = 0;
+        final ChangeSet changes = session.write( model );
+        assertThat( updates[0], equalTo( 1 ) );
+        assertThat( changes.getChanged(),
+                    equalTo( Arrays.asList( "/project/build/pluginManagement/plugins/plugin[4]/version" ) ) );
+
+        new MavenJDOMWriter( model ).write( model, reference );
+        assertThat( FileUtils.fileRead( file, "UTF-8" ), equalTo( FileUtils.fileRead( reference, "UTF-8" ) ) );
+    }
+
+    private Model read( final File file )
+        throws Exception
+    {
+        final InputStream in = new FileInputStream( file );
+        try
+        {
+            return new MavenXpp3Reader().read( in );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
 }